@@ -0,0 +1,57 @@
+package com.udemyspringtdd.hoaxifybackend.benchmark;
+
+import com.udemyspringtdd.hoaxifybackend.HoaxifyBackendApplication;
+import com.udemyspringtdd.hoaxifybackend.user.UserCount;
+import com.udemyspringtdd.hoaxifybackend.user.UserSearchIndex;
+import com.udemyspringtdd.hoaxifybackend.user.UsernameBloomFilter;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Starts the application on a random port with the in-memory H2 database and seeds it for benchmarks.
+ */
+final class BenchmarkContext {
+
+    static final String PASSWORD = "P4ssword";
+
+    private static final int SEED_BATCH_SIZE = 10_000;
+
+    private BenchmarkContext() {
+    }
+
+    static ConfigurableApplicationContext start() {
+        return new SpringApplicationBuilder(HoaxifyBackendApplication.class)
+                .profiles("test")
+                .logStartupInfo(false)
+                .properties("server.port=0", "spring.main.banner-mode=off", "logging.level.root=WARN")
+                .run();
+    }
+
+    /**
+     * Inserts user1..userN with plain JDBC batches. All rows share one password hash, so seeding a million
+     * users does not cost a million BCrypt rounds.
+     */
+    static void seedUsers(ConfigurableApplicationContext context, int rows) {
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        String hash = context.getBean(PasswordEncoder.class).encode(PASSWORD);
+        for (int from = 1; from <= rows; from += SEED_BATCH_SIZE) {
+            int to = Math.min(rows, from + SEED_BATCH_SIZE - 1);
+            List<Object[]> batch = new ArrayList<>(to - from + 1);
+            for (int i = from; i <= to; i++) {
+                batch.add(new Object[]{(long) i, "user" + i, "user" + i, "display" + i, hash, 0L});
+            }
+            jdbcTemplate.batchUpdate("insert into user (id, username, username_key, display_name, password, version) values (?, ?, ?, ?, ?, ?)", batch);
+        }
+        // the pooled id generator hands out the block below the sequence value, so leave a gap of one block
+        jdbcTemplate.execute("alter sequence user_seq restart with " + (rows + 100));
+        // the rows bypassed the write paths that keep the username filter, the search index and the count current
+        context.getBean(UsernameBloomFilter.class).rebuild();
+        context.getBean(UserSearchIndex.class).rebuild();
+        context.getBean(UserCount.class).reconcile();
+    }
+}
@@ -0,0 +1,115 @@
+package com.udemyspringtdd.hoaxifybackend.benchmark;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.udemyspringtdd.hoaxifybackend.TestPage;
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserVM;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Serialises a {@code Page<UserVM>} with the ObjectMapper configured by the application, as JSON and as the
+ * binary formats callers may ask for, and reads it back the way a calling service would. The payload size of
+ * every format is reported next to its serialisation time: {@code serializePage:bytes} divided by
+ * {@code serializePage:pages}. JMH sums these counters over the iterations, so neither is a size by itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PageSerializationBenchmark {
+
+    private static final TypeReference<TestPage<UserVM>> PAGE_TYPE = new TypeReference<>() {};
+
+    @Param({"10", "100"})
+    int pageSize;
+
+    @Param({"json", "smile", "cbor"})
+    String format;
+
+    ConfigurableApplicationContext context;
+
+    ObjectMapper objectMapper;
+
+    Page<UserVM> page;
+
+    byte[] payload;
+
+    @Setup
+    public void setUp() throws IOException {
+        context = BenchmarkContext.start();
+        objectMapper = format.equals("json") ? context.getBean(ObjectMapper.class) : binaryObjectMapper();
+        List<UserVM> content = IntStream.range(0, pageSize)
+                .mapToObj(i -> new UserVM(i, "user" + i, "display" + i, "profile" + i + ".png"))
+                .collect(Collectors.toList());
+        page = new PageImpl<>(content, PageRequest.of(3, pageSize), 1_000_000);
+        payload = objectMapper.writeValueAsBytes(page);
+    }
+
+    // built like the converters of the binary formats, from the application's builder
+    private ObjectMapper binaryObjectMapper() {
+        JsonFactory factory = format.equals("smile") ? new SmileFactory() : new CBORFactory();
+        return context.getBean(Jackson2ObjectMapperBuilder.class).factory(factory).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Written {
+
+        public long bytes;
+
+        public long pages;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+            pages = 0;
+        }
+    }
+
+    @Benchmark
+    public byte[] serializePage(Written written) throws IOException {
+        byte[] serialized = objectMapper.writeValueAsBytes(page);
+        written.bytes += serialized.length;
+        written.pages++;
+        return serialized;
+    }
+
+    @Benchmark
+    public TestPage<UserVM> deserializePage() throws IOException {
+        return objectMapper.readValue(payload, PAGE_TYPE);
+    }
+}
@@ -0,0 +1,57 @@
+package com.udemyspringtdd.hoaxifybackend.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the encoder bean the application actually uses, including any wrapping configured around BCrypt.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PasswordEncoderBenchmark {
+
+    ConfigurableApplicationContext context;
+
+    PasswordEncoder passwordEncoder;
+
+    String encoded;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start();
+        passwordEncoder = context.getBean(PasswordEncoder.class);
+        encoded = passwordEncoder.encode(BenchmarkContext.PASSWORD);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public String encode() {
+        return passwordEncoder.encode(BenchmarkContext.PASSWORD);
+    }
+
+    @Benchmark
+    public boolean matches() {
+        return passwordEncoder.matches(BenchmarkContext.PASSWORD, encoded);
+    }
+}
@@ -0,0 +1,57 @@
+package com.udemyspringtdd.hoaxifybackend.benchmark;
+
+import com.udemyspringtdd.hoaxifybackend.user.UniqueUsernameValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class UniqueUsernameValidatorBenchmark {
+
+    @Param({"10000", "1000000"})
+    int rows;
+
+    ConfigurableApplicationContext context;
+
+    UniqueUsernameValidator validator;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start();
+        BenchmarkContext.seedUsers(context, rows);
+        validator = context.getAutowireCapableBeanFactory().createBean(UniqueUsernameValidator.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public boolean takenUsername() {
+        return validator.isValid("user" + (ThreadLocalRandom.current().nextInt(rows) + 1), null);
+    }
+
+    @Benchmark
+    public boolean freeUsername() {
+        return validator.isValid("free" + ThreadLocalRandom.current().nextInt(rows), null);
+    }
+}
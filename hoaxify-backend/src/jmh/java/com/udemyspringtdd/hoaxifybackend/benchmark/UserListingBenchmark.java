@@ -0,0 +1,76 @@
+package com.udemyspringtdd.hoaxifybackend.benchmark;
+
+import com.udemyspringtdd.hoaxifybackend.user.UserRepository;
+import com.udemyspringtdd.hoaxifybackend.user.UserService;
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserVM;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the original listing path (entities mapped to UserVM) with the UserVM projection queries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class UserListingBenchmark {
+
+    @Param({"1000000"})
+    int rows;
+
+    @Param({"0", "1000"})
+    int page;
+
+    @Param({"100"})
+    int pageSize;
+
+    ConfigurableApplicationContext context;
+
+    UserRepository userRepository;
+
+    UserService userService;
+
+    Pageable pageable;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start();
+        BenchmarkContext.seedUsers(context, rows);
+        userRepository = context.getBean(UserRepository.class);
+        userService = context.getBean(UserService.class);
+        pageable = PageRequest.of(page, pageSize);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Page<UserVM> entityPage() {
+        return userRepository.findAll(pageable).map(UserVM::new);
+    }
+
+    @Benchmark
+    public Page<UserVM> projectionPage() {
+        return userService.getUsers(null, pageable);
+    }
+}
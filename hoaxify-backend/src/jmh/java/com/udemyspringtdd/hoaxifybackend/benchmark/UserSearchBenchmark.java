@@ -0,0 +1,59 @@
+package com.udemyspringtdd.hoaxifybackend.benchmark;
+
+import com.udemyspringtdd.hoaxifybackend.user.UserSearchIndex;
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserVM;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class UserSearchBenchmark {
+
+    @Param({"10000", "1000000"})
+    int rows;
+
+    ConfigurableApplicationContext context;
+
+    UserSearchIndex index;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start();
+        BenchmarkContext.seedUsers(context, rows);
+        index = context.getBean(UserSearchIndex.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<UserVM> topTen() {
+        return index.search("display" + ThreadLocalRandom.current().nextInt(1000), 10);
+    }
+
+    @Benchmark
+    public List<UserVM> noMatch() {
+        return index.search("nobody" + ThreadLocalRandom.current().nextInt(1000), 10);
+    }
+}
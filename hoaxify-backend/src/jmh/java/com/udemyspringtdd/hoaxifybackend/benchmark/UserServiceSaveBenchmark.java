@@ -0,0 +1,54 @@
+package com.udemyspringtdd.hoaxifybackend.benchmark;
+
+import com.udemyspringtdd.hoaxifybackend.user.User;
+import com.udemyspringtdd.hoaxifybackend.user.UserService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class UserServiceSaveBenchmark {
+
+    ConfigurableApplicationContext context;
+
+    UserService userService;
+
+    final AtomicLong sequence = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start();
+        userService = context.getBean(UserService.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public User save() {
+        User user = new User();
+        user.setUsername("bench-user" + sequence.incrementAndGet());
+        user.setDisplayName("bench-display");
+        user.setPassword(BenchmarkContext.PASSWORD);
+        return userService.save(user);
+    }
+}
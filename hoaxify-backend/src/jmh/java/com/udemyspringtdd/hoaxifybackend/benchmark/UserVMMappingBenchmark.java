@@ -0,0 +1,52 @@
+package com.udemyspringtdd.hoaxifybackend.benchmark;
+
+import com.udemyspringtdd.hoaxifybackend.user.User;
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserVM;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class UserVMMappingBenchmark {
+
+    @Param({"10", "100"})
+    int pageSize;
+
+    List<User> users;
+
+    @Setup
+    public void setUp() {
+        users = IntStream.range(0, pageSize).mapToObj(i -> {
+            User user = new User();
+            user.setId(i);
+            user.setUsername("user" + i);
+            user.setDisplayName("display" + i);
+            user.setPassword("$2a$10$abcdefghijklmnopqrstuv");
+            user.setImage("profile" + i + ".png");
+            return user;
+        }).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<UserVM> mapToUserVM() {
+        return users.stream().map(UserVM::new).collect(Collectors.toList());
+    }
+}
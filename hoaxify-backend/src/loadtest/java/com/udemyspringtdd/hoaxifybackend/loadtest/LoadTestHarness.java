@@ -0,0 +1,397 @@
+package com.udemyspringtdd.hoaxifybackend.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.udemyspringtdd.hoaxifybackend.HoaxifyBackendApplication;
+import com.udemyspringtdd.hoaxifybackend.reactive.ReactiveHoaxifyApplication;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drives the REST API end to end with a weighted mix of signup, login, list, profile and update requests
+ * and reports throughput and latency percentiles per endpoint.
+ *
+ * <p>Without {@code --url} the application is started in this JVM on a random port with an in-memory
+ * database seeded with {@code --users} users. Workers run a closed loop: each sends its next request as
+ * soon as the previous one completed, so latencies are those seen at the offered concurrency.
+ *
+ * <pre>
+ * --url http://host:8080   target an already running instance instead of starting one
+ * --users 1000             seeded users user1..userN, all with password P4ssword
+ * --threads 16             concurrent workers; worker n updates user n+1
+ * --warmup 10              seconds run before measuring
+ * --duration 30            measured seconds
+ * --list-pages 10          pages of ten users the list requests spread over
+ * --mix signup=5,login=10,list=40,profile=40,update=5
+ * --out target/loadtest    directory for the .hgrm histogram files
+ * --virtual-threads true   start the application with hoaxify.virtual-threads.enabled (Java 21 runtime)
+ * --reactive true          start the WebFlux/R2DBC variant, ReactiveHoaxifyApplication, instead
+ * </pre>
+ *
+ * <p>To compare how many concurrent requests each mode holds, run the same high-concurrency read mix with and
+ * without virtual threads, e.g. {@code --threads 1000 --mix profile=1,list=1}: Tomcat's pool serves 200
+ * requests at a time and queues the rest, virtual threads take them all and queue only on the connection pool.
+ */
+public final class LoadTestHarness {
+
+    private static final String PASSWORD = "P4ssword";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Options options;
+
+    private final String baseUrl;
+
+    private final CloseableHttpClient client;
+
+    private final Map<Operation, Recorder> recorders = new EnumMap<>(Operation.class);
+
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+
+    private final AtomicLong signupSequence = new AtomicLong();
+
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+
+    private volatile boolean running = true;
+
+    private LoadTestHarness(Options options, String baseUrl) {
+        this.options = options;
+        this.baseUrl = baseUrl;
+        PoolingHttpClientConnectionManager connections = new PoolingHttpClientConnectionManager();
+        connections.setMaxTotal(options.threads);
+        connections.setDefaultMaxPerRoute(options.threads);
+        this.client = HttpClients.custom().setConnectionManager(connections).build();
+        for (Operation operation : Operation.values()) {
+            // microsecond resolution up to one minute
+            recorders.put(operation, new Recorder(TimeUnit.MINUTES.toMicros(1), 3));
+            errors.put(operation, new LongAdder());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        // keeps the HTTP client quiet when no application context configures logging
+        LoggingSystem.get(LoadTestHarness.class.getClassLoader()).setLogLevel(LoggingSystem.ROOT_LOGGER_NAME, LogLevel.WARN);
+        Options options = Options.parse(args);
+        if (options.users < options.threads) {
+            throw new IllegalArgumentException("--users must be at least --threads, every worker updates its own user");
+        }
+        ConfigurableApplicationContext context = null;
+        String baseUrl = options.url;
+        if (baseUrl == null) {
+            System.out.printf("starting %s application with %d users%s%n", options.reactive ? "reactive" : "servlet",
+                    options.users, options.virtualThreads ? " on virtual threads" : "");
+            SpringApplicationBuilder application = options.reactive
+                    ? new SpringApplicationBuilder(ReactiveHoaxifyApplication.class).profiles("reactive")
+                    : new SpringApplicationBuilder(HoaxifyBackendApplication.class);
+            context = application
+                    .logStartupInfo(false)
+                    .properties("server.port=0", "spring.main.banner-mode=off", "logging.level.root=WARN")
+                    // passed as an argument because default properties lose against application.yml
+                    .run("--hoaxify.seed.users=" + options.users, "--hoaxify.virtual-threads.enabled=" + options.virtualThreads);
+            baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+        }
+        LoadTestHarness harness = new LoadTestHarness(options, baseUrl);
+        try {
+            harness.run();
+        } finally {
+            harness.client.close();
+            if (context != null) {
+                context.close();
+            }
+        }
+    }
+
+    private void run() throws Exception {
+        List<Thread> workers = new ArrayList<>(options.threads);
+        for (int i = 0; i < options.threads; i++) {
+            Worker worker = new Worker("user" + (i + 1));
+            worker.login();
+            Thread thread = new Thread(worker, "load-worker-" + i);
+            workers.add(thread);
+        }
+        System.out.printf("%s: %d workers, %ds warmup, %ds measured, mix %s%n",
+                baseUrl, options.threads, options.warmupSeconds, options.durationSeconds, options.mix);
+        workers.forEach(Thread::start);
+
+        TimeUnit.SECONDS.sleep(options.warmupSeconds);
+        for (Operation operation : Operation.values()) {
+            recorders.get(operation).reset();
+            errors.get(operation).reset();
+        }
+        long start = System.nanoTime();
+        TimeUnit.SECONDS.sleep(options.durationSeconds);
+        Map<Operation, Histogram> histograms = new EnumMap<>(Operation.class);
+        Map<Operation, Long> errorCounts = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            histograms.put(operation, recorders.get(operation).getIntervalHistogram());
+            errorCounts.put(operation, errors.get(operation).sum());
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        running = false;
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        report(histograms, errorCounts, elapsedSeconds);
+    }
+
+    private void report(Map<Operation, Histogram> histograms, Map<Operation, Long> errorCounts, double elapsedSeconds) throws IOException {
+        Path out = Paths.get(options.out);
+        Files.createDirectories(out);
+        Histogram total = new Histogram(TimeUnit.MINUTES.toMicros(1), 3);
+
+        System.out.printf("%n%-8s %9s %9s %9s %9s %9s %9s %7s%n", "endpoint", "requests", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms", "errors");
+        for (Operation operation : Operation.values()) {
+            Histogram histogram = histograms.get(operation);
+            total.add(histogram);
+            printRow(operation.name().toLowerCase(), histogram, elapsedSeconds, errorCounts.get(operation));
+            writeHistogram(out.resolve(operation.name().toLowerCase() + ".hgrm"), histogram);
+        }
+        long totalErrors = errorCounts.values().stream().mapToLong(Long::longValue).sum();
+        printRow("total", total, elapsedSeconds, totalErrors);
+        writeHistogram(out.resolve("total.hgrm"), total);
+        System.out.printf("%nhistograms written to %s%n", out.toAbsolutePath());
+    }
+
+    private static void printRow(String name, Histogram histogram, double elapsedSeconds, long errors) {
+        System.out.printf("%-8s %9d %9.1f %9.2f %9.2f %9.2f %9.2f %7d%n", name, histogram.getTotalCount(),
+                histogram.getTotalCount() / elapsedSeconds, millis(histogram.getValueAtPercentile(50)),
+                millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+                millis(histogram.getMaxValue()), errors);
+    }
+
+    private static void writeHistogram(Path file, Histogram histogram) throws IOException {
+        try (PrintStream stream = new PrintStream(Files.newOutputStream(file), false, StandardCharsets.UTF_8)) {
+            histogram.outputPercentileDistribution(stream, 1000.0);
+        }
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    private enum Operation {
+        SIGNUP, LOGIN, LIST, PROFILE, UPDATE
+    }
+
+    private final class Worker implements Runnable {
+
+        private final String username;
+
+        private long userId;
+
+        private String token;
+
+        Worker(String username) {
+            this.username = username;
+        }
+
+        void login() throws IOException {
+            HttpPost login = new HttpPost(baseUrl + "/api/1.0/login");
+            login.setHeader(HttpHeaders.AUTHORIZATION, basic(username));
+            try (CloseableHttpResponse response = client.execute(login)) {
+                if (response.getStatusLine().getStatusCode() != 200) {
+                    throw new IllegalStateException("login of " + username + " failed with " + response.getStatusLine());
+                }
+                JsonNode body = MAPPER.readTree(EntityUtils.toString(response.getEntity()));
+                userId = body.get("id").asLong();
+                token = body.get("token").asText();
+            }
+        }
+
+        @Override
+        public void run() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (running) {
+                Operation operation = options.mix.pick(random.nextInt(options.mix.totalWeight));
+                HttpUriRequest request = request(operation, random);
+                long start = System.nanoTime();
+                boolean ok;
+                try (CloseableHttpResponse response = client.execute(request)) {
+                    EntityUtils.consume(response.getEntity());
+                    int status = response.getStatusLine().getStatusCode();
+                    ok = status >= 200 && status < 300;
+                } catch (IOException e) {
+                    ok = false;
+                }
+                recorders.get(operation).recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                if (!ok) {
+                    errors.get(operation).increment();
+                }
+            }
+        }
+
+        private HttpUriRequest request(Operation operation, ThreadLocalRandom random) {
+            switch (operation) {
+                case SIGNUP:
+                    HttpPost signup = new HttpPost(baseUrl + "/api/1.0/users");
+                    String newUsername = "lt" + runId + "-" + signupSequence.incrementAndGet();
+                    signup.setEntity(json(Map.of("username", newUsername, "displayName", newUsername, "password", PASSWORD)));
+                    return signup;
+                case LOGIN:
+                    HttpPost login = new HttpPost(baseUrl + "/api/1.0/login");
+                    login.setHeader(HttpHeaders.AUTHORIZATION, basic("user" + (random.nextInt(options.users) + 1)));
+                    return login;
+                case LIST:
+                    return new HttpGet(baseUrl + "/api/1.0/users?size=10&page=" + random.nextInt(options.listPages));
+                case PROFILE:
+                    return new HttpGet(baseUrl + "/api/1.0/users/user" + (random.nextInt(options.users) + 1));
+                case UPDATE:
+                    HttpPut update = new HttpPut(baseUrl + "/api/1.0/users/" + userId);
+                    update.setHeader(HttpHeaders.AUTHORIZATION, "Bearer " + token);
+                    update.setEntity(json(Map.of("displayName", "display-" + random.nextInt(1_000_000))));
+                    return update;
+                default:
+                    throw new IllegalStateException("unknown operation " + operation);
+            }
+        }
+    }
+
+    private static String basic(String username) {
+        String credentials = username + ":" + PASSWORD;
+        return "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static StringEntity json(Map<String, String> body) {
+        try {
+            return new StringEntity(MAPPER.writeValueAsString(body), ContentType.APPLICATION_JSON);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Mix {
+
+        private final Operation[] operations;
+
+        private final int[] cumulativeWeights;
+
+        private final int totalWeight;
+
+        private final String description;
+
+        private Mix(Map<Operation, Integer> weights, String description) {
+            this.operations = weights.keySet().toArray(new Operation[0]);
+            this.cumulativeWeights = new int[operations.length];
+            int sum = 0;
+            for (int i = 0; i < operations.length; i++) {
+                sum += weights.get(operations[i]);
+                cumulativeWeights[i] = sum;
+            }
+            if (sum <= 0) {
+                throw new IllegalArgumentException("--mix needs at least one positive weight");
+            }
+            this.totalWeight = sum;
+            this.description = description;
+        }
+
+        static Mix parse(String value) {
+            Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+            for (String entry : value.split(",")) {
+                String[] parts = entry.trim().split("=");
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("--mix entries look like list=40, got " + entry);
+                }
+                weights.put(Operation.valueOf(parts[0].trim().toUpperCase()), Integer.parseInt(parts[1].trim()));
+            }
+            return new Mix(weights, value);
+        }
+
+        Operation pick(int value) {
+            for (int i = 0; i < cumulativeWeights.length; i++) {
+                if (value < cumulativeWeights[i]) {
+                    return operations[i];
+                }
+            }
+            return operations[operations.length - 1];
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+
+    private static final class Options {
+
+        String url;
+
+        int users = 1000;
+
+        int threads = 16;
+
+        int warmupSeconds = 10;
+
+        int durationSeconds = 30;
+
+        /** Pages the list requests spread over; page size is fixed at 10. */
+        int listPages = 10;
+
+        Mix mix = Mix.parse("signup=5,login=10,list=40,profile=40,update=5");
+
+        String out = "target/loadtest";
+
+        boolean virtualThreads;
+
+        boolean reactive;
+
+        static Options parse(String[] args) {
+            Map<String, String> values = new HashMap<>();
+            for (int i = 0; i < args.length; i++) {
+                if (!args[i].startsWith("--") || i + 1 == args.length) {
+                    throw new IllegalArgumentException("expected --name value pairs, got " + args[i]);
+                }
+                values.put(args[i].substring(2), args[++i]);
+            }
+            Options options = new Options();
+            values.forEach((name, value) -> {
+                switch (name) {
+                    case "url": options.url = value.replaceAll("/+$", ""); break;
+                    case "users": options.users = Integer.parseInt(value); break;
+                    case "threads": options.threads = Integer.parseInt(value); break;
+                    case "warmup": options.warmupSeconds = Integer.parseInt(value); break;
+                    case "duration": options.durationSeconds = Integer.parseInt(value); break;
+                    case "list-pages": options.listPages = Integer.parseInt(value); break;
+                    case "mix": options.mix = Mix.parse(value); break;
+                    case "out": options.out = value; break;
+                    case "virtual-threads": options.virtualThreads = Boolean.parseBoolean(value); break;
+                    case "reactive": options.reactive = Boolean.parseBoolean(value); break;
+                    default: throw new IllegalArgumentException("unknown option --" + name);
+                }
+            });
+            return options;
+        }
+    }
+}
@@ -1,33 +1,57 @@
 package com.udemyspringtdd.hoaxifybackend;
 
+import com.udemyspringtdd.hoaxifybackend.configuration.AppConfiguration;
 import com.udemyspringtdd.hoaxifybackend.user.User;
-import com.udemyspringtdd.hoaxifybackend.user.UserService;
+import com.udemyspringtdd.hoaxifybackend.user.UserCount;
+import com.udemyspringtdd.hoaxifybackend.user.UserListVersion;
+import com.udemyspringtdd.hoaxifybackend.user.UserRepository;
+import com.udemyspringtdd.hoaxifybackend.user.UserSearchIndex;
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserVM;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.security.crypto.password.PasswordEncoder;
 
+import java.util.List;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
-@SpringBootApplication
+// R2DBC is only used by ReactiveHoaxifyApplication; a ConnectionFactory would switch off the JDBC DataSource
+@SpringBootApplication(exclude = R2dbcAutoConfiguration.class)
+@EnableScheduling
 public class HoaxifyBackendApplication {
 
+    private static final int SEED_BATCH_SIZE = 1000;
+
     public static void main(String[] args) {
         SpringApplication.run(HoaxifyBackendApplication.class, args);
     }
 
     @Bean
     @Profile("!test")
-    CommandLineRunner run(UserService userService){
+    CommandLineRunner run(UserRepository userRepository, UserSearchIndex userSearchIndex,
+                          UserListVersion userListVersion, UserCount userCount, PasswordEncoder passwordEncoder,
+                          AppConfiguration appConfiguration){
         return (args) -> {
-            IntStream.range(1, 15).mapToObj(i -> {
-                User user = new User();
-                user.setUsername("user" + i);
-                user.setDisplayName("display1"+i);
-                user.setPassword("P4ssword");
-                return user;
-            }).forEach(userService::save);
+            int users = appConfiguration.getSeed().getUsers();
+            // every seeded user has the same password, so it is hashed once instead of once per user
+            String password = passwordEncoder.encode("P4ssword");
+            for (int from = 1; from <= users; from += SEED_BATCH_SIZE) {
+                List<User> batch = IntStream.rangeClosed(from, Math.min(users, from + SEED_BATCH_SIZE - 1)).mapToObj(i -> {
+                    User user = new User();
+                    user.setUsername("user" + i);
+                    user.setDisplayName("display1"+i);
+                    user.setPassword(password);
+                    return user;
+                }).collect(Collectors.toList());
+                userCount.inserting(batch.size(), () -> userRepository.saveAll(batch));
+                batch.forEach(user -> userSearchIndex.put(new UserVM(user)));
+                userListVersion.increment();
+            }
         };
     }
 
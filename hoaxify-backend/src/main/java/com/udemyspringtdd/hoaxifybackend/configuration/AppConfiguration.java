@@ -0,0 +1,194 @@
+package com.udemyspringtdd.hoaxifybackend.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+@ConfigurationProperties(prefix = "hoaxify")
+@Data
+public class AppConfiguration {
+
+    private AuthCache authCache = new AuthCache();
+
+    private UserCache userCache = new UserCache();
+
+    private UserPageCache userPageCache = new UserPageCache();
+
+    private UserCount userCount = new UserCount();
+
+    private UserBatch userBatch = new UserBatch();
+
+    private Auth auth = new Auth();
+
+    private PasswordHashing passwordHashing = new PasswordHashing();
+
+    private UserImport userImport = new UserImport();
+
+    private UserExport userExport = new UserExport();
+
+    private Seed seed = new Seed();
+
+    private VirtualThreads virtualThreads = new VirtualThreads();
+
+    private Reactive reactive = new Reactive();
+
+    private UsernameFilter usernameFilter = new UsernameFilter();
+
+    private ProfileImages profileImages = new ProfileImages();
+
+    /** Usernames that may call the operator endpoints: the partner import and the directory export. Nobody by default. */
+    private List<String> operators = new ArrayList<>();
+
+    // usernames are unique ignoring case, so the list is matched the same way
+    public boolean isOperator(String username) {
+        return operators.stream().anyMatch(operator -> operator.equalsIgnoreCase(username));
+    }
+
+    @Data
+    public static class AuthCache {
+
+        private long maxSize = 10_000;
+
+        private Duration expireAfterWrite = Duration.ofMinutes(5);
+    }
+
+    @Data
+    public static class UserCache {
+
+        private long maxSize = 10_000;
+
+        private Duration expireAfterWrite = Duration.ofMinutes(10);
+    }
+
+    @Data
+    public static class UserPageCache {
+
+        /** Bytes of serialised anonymous listing pages kept in total; the least used pages go first. */
+        private DataSize maxSize = DataSize.ofMegabytes(16);
+    }
+
+    @Data
+    public static class UserCount {
+
+        /** How often the in-memory user count is checked against a COUNT(*) of the table. */
+        private Duration reconcileInterval = Duration.ofMinutes(5);
+    }
+
+    @Data
+    public static class UserBatch {
+
+        /** Ids and usernames one batch request may ask for together. */
+        private int maxSize = 100;
+    }
+
+    @Data
+    public static class Auth {
+
+        /** Keeps HTTP Basic on every protected endpoint; when off it is only accepted by the login endpoint. */
+        private boolean basicEnabled = true;
+
+        /** HMAC key for access tokens; a random per-process key is used when empty. */
+        private String tokenSecret;
+
+        private Duration tokenExpiry = Duration.ofHours(1);
+    }
+
+    @Data
+    public static class PasswordHashing {
+
+        /** Threads all BCrypt work runs on; 0 uses one per available processor. */
+        private int threads = 0;
+
+        /** Hashes that may wait for a thread; when it is full requests that need one get 503. */
+        private int queueSize = 100;
+
+        /** Requests whose hash is expected to wait longer than this for a thread get 503 instead. */
+        private Duration maxQueueWait = Duration.ofSeconds(2);
+
+        /** BCrypt work factor; 0 picks the highest one whose hash fits in targetHashTime on this node at startup, and then
+         * only hashes more than one factor away from it get rehashed. */
+        private int strength = 0;
+
+        /** CPU time one hash may cost when the strength is calibrated. */
+        private Duration targetHashTime = Duration.ofMillis(100);
+
+        /** Lowest work factor calibration may pick, however slow the node is. */
+        private int minStrength = 10;
+    }
+
+    @Data
+    public static class UserImport {
+
+        /** Rows checked, hashed and inserted together. */
+        private int batchSize = 500;
+    }
+
+    @Data
+    public static class UserExport {
+
+        /** Exports streaming at once; each holds a pooled connection for as long as its client reads, others get 503. */
+        private int maxConcurrent = 2;
+    }
+
+    @Data
+    public static class Seed {
+
+        /** Users created at startup outside the test profile; all of them get the password P4ssword. */
+        private int users = 14;
+    }
+
+    @Data
+    public static class VirtualThreads {
+
+        /** Handles every request on its own virtual thread instead of Tomcat's pool; needs a Java 21 runtime. */
+        private boolean enabled = false;
+    }
+
+    @Data
+    public static class Reactive {
+
+        /** Threads of the scheduler BCrypt runs on, off the event loop; 0 uses one per available processor. */
+        private int hashingThreads = 0;
+
+        /** Hashing tasks that may wait for a thread before new ones are rejected. */
+        private int hashingQueueSize = 10_000;
+    }
+
+    @Data
+    public static class UsernameFilter {
+
+        /** Usernames the Bloom filter is sized for; beyond it the false positive rate climbs. */
+        private long expectedInsertions = 1_000_000;
+
+        /** Share of free usernames that still need a database query at the expected size. */
+        private double falsePositiveRate = 0.01;
+    }
+
+    @Data
+    public static class ProfileImages {
+
+        /** Directory uploaded profile images are stored in, named by the SHA-256 of their content. */
+        private String path = "uploads/profile";
+
+        /** How long clients and proxies may keep an image; names change with the content, so this can be long. */
+        private Duration cacheMaxAge = Duration.ofDays(365);
+
+        /** Edge lengths of the square thumbnails made of every upload; lists get the smallest, profiles the largest. */
+        private List<Integer> thumbnailSizes = List.of(64, 200);
+
+        /** Threads resizing uploads; 0 uses one per available processor. */
+        private int thumbnailThreads = 0;
+
+        /** Uploads that may wait for a resize thread; when it is full the uploading request resizes them itself. */
+        private int thumbnailQueueSize = 100;
+
+        /** Pixels an upload may declare to get thumbnails; decoding takes four bytes of heap per pixel. */
+        private long maxImagePixels = 4096 * 4096;
+    }
+}
@@ -1,25 +1,43 @@
 package com.udemyspringtdd.hoaxifybackend.configuration;
 
 import com.udemyspringtdd.hoaxifybackend.user.User;
+import com.udemyspringtdd.hoaxifybackend.user.UserCache;
 import com.udemyspringtdd.hoaxifybackend.user.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
 @Service
-public class AuthUserService implements UserDetailsService {
+public class AuthUserService implements UserDetailsService, UserDetailsPasswordService {
 
     @Autowired
     UserRepository userRepository;
 
+    @Autowired
+    UserCache userCache;
+
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        User user = userRepository.findByUsername(username);
+        User user = userCache.get(username, userRepository::findByUsername);
         if (user == null){
             throw new UsernameNotFoundException("User not found");
         }
         return user;
     }
+
+    /**
+     * Stores a new hash of the password the user just logged in with; does nothing when the stored hash
+     * changed since the login read it.
+     */
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        if (userRepository.replacePassword(User.usernameKey(user.getUsername()), user.getPassword(), newPassword) == 0) {
+            return user;
+        }
+        userCache.invalidate(user.getUsername());
+        return loadUserByUsername(user.getUsername());
+    }
 }
@@ -0,0 +1,45 @@
+package com.udemyspringtdd.hoaxifybackend.configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+/**
+ * Smile and CBOR bodies for callers that ask for them with Accept or send them with Content-Type. Spring MVC
+ * registers both converters behind the JSON one as soon as the formats are on the classpath, so JSON stays the
+ * answer to browsers and to Accept: *&#47;*. Their mappers are swapped for ones with the application's Jackson settings.
+ */
+@Configuration
+public class BinaryFormatConfiguration implements WebMvcConfigurer {
+
+    public static final MediaType APPLICATION_SMILE = new MediaType("application", "x-jackson-smile");
+
+    // not converter beans: Spring Boot would put those in front of the multipart converters of every RestTemplate
+    @Autowired
+    ObjectProvider<Jackson2ObjectMapperBuilder> objectMapperBuilders;
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        for (HttpMessageConverter<?> converter : converters) {
+            if (converter instanceof MappingJackson2SmileHttpMessageConverter || converter instanceof MappingJackson2CborHttpMessageConverter) {
+                AbstractJackson2HttpMessageConverter jackson = (AbstractJackson2HttpMessageConverter) converter;
+                jackson.setObjectMapper(objectMapper(jackson.getObjectMapper()));
+            }
+        }
+    }
+
+    // the builder is a prototype, every call gets a fresh one with Spring Boot's customisations applied
+    private ObjectMapper objectMapper(ObjectMapper format) {
+        return objectMapperBuilders.getObject().factory(format.getFactory().copy()).build();
+    }
+}
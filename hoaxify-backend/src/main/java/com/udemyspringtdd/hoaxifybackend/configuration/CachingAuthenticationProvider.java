@@ -0,0 +1,51 @@
+package com.udemyspringtdd.hoaxifybackend.configuration;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
+
+public class CachingAuthenticationProvider extends DaoAuthenticationProvider {
+
+    private final VerifiedCredentialCache verifiedCredentialCache;
+
+    private final UserDetailsPasswordService userDetailsPasswordService;
+
+    public CachingAuthenticationProvider(VerifiedCredentialCache verifiedCredentialCache, UserDetailsPasswordService userDetailsPasswordService) {
+        this.verifiedCredentialCache = verifiedCredentialCache;
+        this.userDetailsPasswordService = userDetailsPasswordService;
+    }
+
+    @Override
+    protected void additionalAuthenticationChecks(UserDetails userDetails, UsernamePasswordAuthenticationToken authentication) throws AuthenticationException {
+        if (authentication.getCredentials() == null) {
+            super.additionalAuthenticationChecks(userDetails, authentication);
+            return;
+        }
+        String presentedPassword = authentication.getCredentials().toString();
+        if (verifiedCredentialCache.isVerified(userDetails.getUsername(), presentedPassword, userDetails.getPassword())) {
+            return;
+        }
+        // throws BadCredentialsException when BCrypt does not match, so only valid pairs get cached
+        super.additionalAuthenticationChecks(userDetails, authentication);
+        verifiedCredentialCache.markVerified(userDetails.getUsername(), presentedPassword, userDetails.getPassword());
+    }
+
+    // hashes made with another work factor are replaced while the plain password is at hand
+    @Override
+    protected Authentication createSuccessAuthentication(Object principal, Authentication authentication, UserDetails user) {
+        if (authentication.getCredentials() != null && getPasswordEncoder().upgradeEncoding(user.getPassword())) {
+            String presentedPassword = authentication.getCredentials().toString();
+            try {
+                String newPassword = getPasswordEncoder().encode(presentedPassword);
+                userDetailsPasswordService.updatePassword(user, newPassword);
+                verifiedCredentialCache.markVerified(user.getUsername(), presentedPassword, newPassword);
+            } catch (PasswordHashingRejectedException e) {
+                // the password was right, only the rehash was turned away; a later login tries again
+            }
+        }
+        return super.createSuccessAuthentication(principal, authentication, user);
+    }
+}
@@ -0,0 +1,79 @@
+package com.udemyspringtdd.hoaxifybackend.configuration;
+
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * BCrypt at one fixed work factor, usually picked by {@link #calibrate} for the node it runs on. Hashes stored
+ * with a factor further than the tolerance from it, higher or lower, report that they need encoding again, so
+ * logins move those hashes to the current factor. Calibration can land one factor apart on two nodes or two
+ * restarts of the same one; a tolerance of one keeps logins from rehashing back and forth between them.
+ */
+public class CalibratedPasswordEncoder implements PasswordEncoder {
+
+    private static final Pattern BCRYPT_STRENGTH = Pattern.compile("\\A\\$2[aby]?\\$(\\d\\d)\\$");
+
+    // cheap enough to measure at startup, expensive enough for the measurement to not be noise
+    private static final int PROBE_STRENGTH = 6;
+
+    private static final int MAX_STRENGTH = 31;
+
+    private final BCryptPasswordEncoder delegate;
+
+    private final int strength;
+
+    private final int tolerance;
+
+    public CalibratedPasswordEncoder(int strength, int tolerance) {
+        this.delegate = new BCryptPasswordEncoder(strength);
+        this.strength = strength;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * The highest work factor whose hash takes no longer than the target on this node, but never less than the minimum.
+     */
+    public static int calibrate(Duration targetHashTime, int minStrength) {
+        BCryptPasswordEncoder probe = new BCryptPasswordEncoder(PROBE_STRENGTH);
+        long fastest = Long.MAX_VALUE;
+        // the first rounds run interpreted, the fastest of a few is what a warm node does
+        for (int i = 0; i < 10; i++) {
+            long startedAt = System.nanoTime();
+            probe.encode("calibration");
+            fastest = Math.min(fastest, System.nanoTime() - startedAt);
+        }
+        // every step of the factor doubles the work
+        int strength = PROBE_STRENGTH;
+        while (strength < MAX_STRENGTH && fastest << (strength + 1 - PROBE_STRENGTH) <= targetHashTime.toNanos()) {
+            strength++;
+        }
+        return Math.max(strength, minStrength);
+    }
+
+    public int getStrength() {
+        return strength;
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return delegate.encode(rawPassword);
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return delegate.matches(rawPassword, encodedPassword);
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        if (encodedPassword == null) {
+            return false;
+        }
+        Matcher matcher = BCRYPT_STRENGTH.matcher(encodedPassword);
+        return matcher.find() && Math.abs(Integer.parseInt(matcher.group(1)) - strength) > tolerance;
+    }
+}
@@ -0,0 +1,27 @@
+package com.udemyspringtdd.hoaxifybackend.configuration;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.web.AuthenticationEntryPoint;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * HTTP Basic restricted to the login endpoint, used when Basic auth is switched off for everything else.
+ */
+public class LoginBasicAuthenticationFilter extends BasicAuthenticationFilter {
+
+    private final RequestMatcher loginRequest = new AntPathRequestMatcher("/api/1.0/login", HttpMethod.POST.name());
+
+    public LoginBasicAuthenticationFilter(AuthenticationManager authenticationManager, AuthenticationEntryPoint authenticationEntryPoint) {
+        super(authenticationManager, authenticationEntryPoint);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !loginRequest.matches(request);
+    }
+}
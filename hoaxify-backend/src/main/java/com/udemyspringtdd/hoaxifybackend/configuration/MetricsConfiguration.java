@@ -0,0 +1,17 @@
+package com.udemyspringtdd.hoaxifybackend.configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+@Configuration
+public class MetricsConfiguration {
+
+    // replaces the converter Spring Boot would otherwise register, so every JSON body is timed
+    @Bean
+    public MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        return new TimedJacksonHttpMessageConverter(objectMapper, meterRegistry);
+    }
+}
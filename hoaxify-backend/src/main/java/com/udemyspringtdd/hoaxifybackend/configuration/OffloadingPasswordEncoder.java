@@ -0,0 +1,42 @@
+package com.udemyspringtdd.hoaxifybackend.configuration;
+
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs every hash and every check on the {@link PasswordHashingExecutor} instead of the calling request thread.
+ */
+public class OffloadingPasswordEncoder implements PasswordEncoder {
+
+    private final PasswordEncoder delegate;
+
+    private final PasswordHashingExecutor executor;
+
+    public OffloadingPasswordEncoder(PasswordEncoder delegate, PasswordHashingExecutor executor) {
+        this.delegate = delegate;
+        this.executor = executor;
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return executor.execute(() -> delegate.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return executor.execute(() -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    /**
+     * For bulk work: waits for room on the hashing queue rather than being turned away.
+     */
+    public CompletableFuture<String> encodeInBackground(CharSequence rawPassword) {
+        return executor.submitBulk(() -> delegate.encode(rawPassword));
+    }
+}
@@ -0,0 +1,157 @@
+package com.udemyspringtdd.hoaxifybackend.configuration;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The only threads BCrypt runs on, one per core, so a burst of signups or logins cannot take the CPU away
+ * from cheap requests. Callers block until their hash is done, but a caller is turned away right away, with
+ * {@link PasswordHashingRejectedException}, when the queue is full or when the hashes already queued would
+ * keep it waiting longer than the configured maximum. That estimate follows the measured hash time.
+ */
+public class PasswordHashingExecutor {
+
+    private final ThreadPoolExecutor executor;
+
+    private final int threads;
+
+    private final long maxQueueWaitNanos;
+
+    // moving average of how long one hash takes, 0 until the first one finished
+    private final AtomicLong averageHashNanos = new AtomicLong();
+
+    // bulk work (imports) waits for room instead of being turned away, but never holds more than one task per thread
+    private final Semaphore bulkPermits;
+
+    private final Timer queueWait;
+
+    private final Counter rejectedQueueFull;
+
+    private final Counter rejectedExpectedWait;
+
+    public PasswordHashingExecutor(int threads, int queueSize, Duration maxQueueWait, MeterRegistry meterRegistry) {
+        this.threads = threads;
+        this.maxQueueWaitNanos = maxQueueWait.toNanos();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), new CustomizableThreadFactory("password-hash-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        // bulk tasks are put on the queue directly, which needs every worker to be running already
+        this.executor.prestartAllCoreThreads();
+        this.bulkPermits = new Semaphore(threads);
+        new ExecutorServiceMetrics(executor, "password-hashing", Tags.empty()).bindTo(meterRegistry);
+        this.queueWait = Timer.builder("password.queue.wait")
+                .description("Time a password hash waited for a hashing thread")
+                .register(meterRegistry);
+        this.rejectedQueueFull = Counter.builder("password.rejected").tag("reason", "queue_full")
+                .description("Password hashes turned away with 503")
+                .register(meterRegistry);
+        this.rejectedExpectedWait = Counter.builder("password.rejected").tag("reason", "expected_wait")
+                .description("Password hashes turned away with 503")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs the task on a hashing thread and waits for it, unless the executor is saturated.
+     */
+    public <T> T execute(Callable<T> task) {
+        long expectedWait = expectedQueueWaitNanos();
+        if (expectedWait > maxQueueWaitNanos) {
+            rejectedExpectedWait.increment();
+            throw new PasswordHashingRejectedException(retryAfterSeconds(expectedWait));
+        }
+        FutureTask<T> future = new FutureTask<>(measured(task));
+        try {
+            executor.execute(future);
+        } catch (RejectedExecutionException e) {
+            rejectedQueueFull.increment();
+            throw new PasswordHashingRejectedException(retryAfterSeconds(expectedQueueWaitNanos()));
+        }
+        return await(future);
+    }
+
+    /**
+     * Queues the task behind the interactive ones, waiting for room instead of failing when the queue is full.
+     */
+    public <T> CompletableFuture<T> submitBulk(Callable<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Callable<T> measured = measured(task);
+        try {
+            bulkPermits.acquire();
+            executor.getQueue().put(() -> {
+                try {
+                    result.complete(measured.call());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    bulkPermits.release();
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    // with nothing queued a new hash waits at most for one running hash to finish
+    private long expectedQueueWaitNanos() {
+        int queued = executor.getQueue().size();
+        return queued == 0 ? 0 : (queued + 1) * averageHashNanos.get() / threads;
+    }
+
+    private <T> Callable<T> measured(Callable<T> task) {
+        long queuedAt = System.nanoTime();
+        return () -> {
+            long startedAt = System.nanoTime();
+            queueWait.record(startedAt - queuedAt, TimeUnit.NANOSECONDS);
+            try {
+                return task.call();
+            } finally {
+                long hash = System.nanoTime() - startedAt;
+                averageHashNanos.accumulateAndGet(hash, (average, sample) -> average == 0 ? sample : average + (sample - average) / 8);
+            }
+        };
+    }
+
+    private static <T> T await(FutureTask<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(false);
+            throw new IllegalStateException("Interrupted while waiting for a password hash", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static long retryAfterSeconds(long expectedWaitNanos) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(expectedWaitNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,18 @@
+package com.udemyspringtdd.hoaxifybackend.configuration;
+
+/**
+ * Thrown instead of queueing a password hash that would wait too long; turned into a 503 by {@link PasswordHashingRejectedFilter}.
+ */
+public class PasswordHashingRejectedException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public PasswordHashingRejectedException(long retryAfterSeconds) {
+        super("Too many password checks in progress, retry in " + retryAfterSeconds + "s");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,59 @@
+package com.udemyspringtdd.hoaxifybackend.configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.udemyspringtdd.hoaxifybackend.error.ApiError;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Answers requests whose password hash was turned away with 503 and Retry-After. Sits in front of Spring
+ * Security, because Basic auth checks passwords inside the security filters, before any controller advice.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class PasswordHashingRejectedFilter extends OncePerRequestFilter {
+
+    private final ObjectMapper objectMapper;
+
+    public PasswordHashingRejectedFilter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        try {
+            filterChain.doFilter(request, response);
+        } catch (ServletException | RuntimeException e) {
+            PasswordHashingRejectedException rejected = findRejection(e);
+            if (rejected == null || response.isCommitted()) {
+                throw e;
+            }
+            response.reset();
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(rejected.getRetryAfterSeconds()));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            ApiError apiError = new ApiError(HttpStatus.SERVICE_UNAVAILABLE.value(), rejected.getMessage(), request.getServletPath());
+            objectMapper.writeValue(response.getOutputStream(), apiError);
+        }
+    }
+
+    private static PasswordHashingRejectedException findRejection(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof PasswordHashingRejectedException) {
+                return (PasswordHashingRejectedException) cause;
+            }
+        }
+        return null;
+    }
+}
@@ -1,5 +1,9 @@
 package com.udemyspringtdd.hoaxifybackend.configuration;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.http.HttpMethod;
@@ -9,27 +13,55 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
 
 @EnableWebSecurity
 @EnableGlobalMethodSecurity(prePostEnabled = true)
 public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
 
+    private static final Logger log = LoggerFactory.getLogger(SecurityConfiguration.class);
+
+    private static final String OPERATOR = "isAuthenticated() and @appConfiguration.isOperator(authentication.name)";
+
     @Autowired
     AuthUserService authUserService;
 
+    @Autowired
+    VerifiedCredentialCache verifiedCredentialCache;
+
+    @Autowired
+    TokenService tokenService;
+
+    @Autowired
+    AppConfiguration appConfiguration;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
     @Override
     protected void configure(HttpSecurity http) throws Exception {
         http.csrf().disable();
 
         // Removes the header "WWW-Authenticate" in the response in case of failure
-        http.httpBasic().authenticationEntryPoint(new BasicAuthenticationEntryPoint());
+        BasicAuthenticationEntryPoint entryPoint = new BasicAuthenticationEntryPoint();
+        if (appConfiguration.getAuth().isBasicEnabled()) {
+            http.httpBasic().authenticationEntryPoint(entryPoint);
+        } else {
+            // older clients still exchange their credentials for a token at the login endpoint
+            http.exceptionHandling().authenticationEntryPoint(entryPoint);
+            http.addFilterAt(new LoginBasicAuthenticationFilter(authenticationManager(), entryPoint), BasicAuthenticationFilter.class);
+        }
+        // Bearer tokens are verified locally, without touching the database or BCrypt
+        http.addFilterBefore(new TokenAuthenticationFilter(tokenService, entryPoint), BasicAuthenticationFilter.class);
 
         // Spring checks if the request was authorized before allowing the matching request to continue
         http.authorizeRequests()
                 .antMatchers(HttpMethod.POST, "/api/1.0/login").authenticated()
+                .antMatchers(HttpMethod.POST, "/api/1.0/logout").authenticated()
                 .antMatchers(HttpMethod.PUT, "/api/1.0/users/{id:[0-9]+}").authenticated()
+                // bulk creation for partner onboarding, holds hashing threads for a whole stream
+                .antMatchers(HttpMethod.POST, "/api/1.0/users/import").access(OPERATOR)
+                .antMatchers(HttpMethod.GET, "/api/1.0/export/users").access(OPERATOR)
                 .and()
                 .authorizeRequests().anyRequest().permitAll(); //order in which the "authorize" is written matters!
 
@@ -38,11 +70,37 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
 
     @Override
     protected void configure(AuthenticationManagerBuilder auth) throws Exception {
-        auth.userDetailsService(authUserService).passwordEncoder(passwordEncoder());
+        auth.authenticationProvider(authenticationProvider());
+    }
+
+    private CachingAuthenticationProvider authenticationProvider(){
+        CachingAuthenticationProvider provider = new CachingAuthenticationProvider(verifiedCredentialCache, authUserService);
+        provider.setUserDetailsService(authUserService);
+        provider.setPasswordEncoder(passwordEncoder());
+        return provider;
     }
 
     @Bean
-    public PasswordEncoder passwordEncoder(){
-        return new BCryptPasswordEncoder();
+    public OffloadingPasswordEncoder passwordEncoder(){
+        return new OffloadingPasswordEncoder(new TimedPasswordEncoder(calibratedPasswordEncoder(), meterRegistry), passwordHashingExecutor());
+    }
+
+    private CalibratedPasswordEncoder calibratedPasswordEncoder(){
+        AppConfiguration.PasswordHashing config = appConfiguration.getPasswordHashing();
+        int strength = config.getStrength() > 0 ? config.getStrength()
+                : CalibratedPasswordEncoder.calibrate(config.getTargetHashTime(), config.getMinStrength());
+        log.info("Hashing passwords with BCrypt strength {}", strength);
+        Gauge.builder("password.strength", () -> strength)
+                .description("BCrypt work factor new hashes are made with")
+                .register(meterRegistry);
+        // a pinned factor is the same everywhere, a calibrated one may be one off on the next node or restart
+        return new CalibratedPasswordEncoder(strength, config.getStrength() > 0 ? 0 : 1);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public PasswordHashingExecutor passwordHashingExecutor(){
+        AppConfiguration.PasswordHashing config = appConfiguration.getPasswordHashing();
+        int threads = config.getThreads() > 0 ? config.getThreads() : Runtime.getRuntime().availableProcessors();
+        return new PasswordHashingExecutor(threads, config.getQueueSize(), config.getMaxQueueWait(), meterRegistry);
     }
 }
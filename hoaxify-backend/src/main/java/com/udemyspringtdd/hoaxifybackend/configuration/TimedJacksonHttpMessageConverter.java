@@ -0,0 +1,53 @@
+package com.udemyspringtdd.hoaxifybackend.configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * The JSON converter Spring MVC uses for request and response bodies, timing every read and write by payload type.
+ * The time includes writing to the response stream, which is where serialisation actually happens.
+ */
+public class TimedJacksonHttpMessageConverter extends MappingJackson2HttpMessageConverter {
+
+    private final MeterRegistry meterRegistry;
+
+    public TimedJacksonHttpMessageConverter(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        super(objectMapper);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws IOException, HttpMessageNotReadableException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            return super.read(type, contextClass, inputMessage);
+        } finally {
+            sample.stop(timer("json.read", type instanceof Class ? (Class<?>) type : contextClass));
+        }
+    }
+
+    @Override
+    protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage) throws IOException, HttpMessageNotWritableException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            super.writeInternal(object, type, outputMessage);
+        } finally {
+            sample.stop(timer("json.write", object.getClass()));
+        }
+    }
+
+    private Timer timer(String name, Class<?> payloadType) {
+        return Timer.builder(name)
+                .tag("type", payloadType == null ? "unknown" : payloadType.getSimpleName())
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,137 @@
+package com.udemyspringtdd.hoaxifybackend.configuration;
+
+import com.udemyspringtdd.hoaxifybackend.user.User;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Issues and verifies compact access tokens of the form {@code base64url(payload).base64url(hmac)}.
+ * The payload carries everything needed to build the principal, so verification needs neither the
+ * database nor BCrypt. Revoked token ids are kept in memory until the token would have expired anyway.
+ */
+@Service
+public class TokenService {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec secret;
+
+    private final Duration expiry;
+
+    private final Clock clock = Clock.systemUTC();
+
+    private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+
+    public TokenService(AppConfiguration appConfiguration) {
+        AppConfiguration.Auth config = appConfiguration.getAuth();
+        this.secret = new SecretKeySpec(secretBytes(config.getTokenSecret()), HMAC_ALGORITHM);
+        this.expiry = config.getTokenExpiry();
+    }
+
+    public String issue(User user) {
+        long expiresAt = clock.instant().plus(expiry).getEpochSecond();
+        String payload = UUID.randomUUID() + ":" + user.getId() + ":" + expiresAt + ":" + user.getUsername();
+        byte[] payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
+        return ENCODER.encodeToString(payloadBytes) + "." + ENCODER.encodeToString(sign(payloadBytes));
+    }
+
+    /**
+     * Returns a principal holding the id and username of the token owner, or {@code null} when the
+     * token is malformed, tampered with, expired or revoked.
+     */
+    public User verify(String token) {
+        TokenPayload payload = parse(token);
+        if (payload == null || payload.expiresAt <= clock.instant().getEpochSecond() || revoked.containsKey(payload.tokenId)) {
+            return null;
+        }
+        User user = new User();
+        user.setId(payload.userId);
+        user.setUsername(payload.username);
+        return user;
+    }
+
+    public void revoke(String token) {
+        TokenPayload payload = parse(token);
+        if (payload == null) {
+            return;
+        }
+        long now = clock.instant().getEpochSecond();
+        revoked.values().removeIf(expiresAt -> expiresAt <= now);
+        revoked.put(payload.tokenId, payload.expiresAt);
+    }
+
+    private TokenPayload parse(String token) {
+        int separator = token.indexOf('.');
+        if (separator < 0) {
+            return null;
+        }
+        try {
+            byte[] payloadBytes = DECODER.decode(token.substring(0, separator));
+            byte[] signature = DECODER.decode(token.substring(separator + 1));
+            if (!MessageDigest.isEqual(signature, sign(payloadBytes))) {
+                return null;
+            }
+            String[] parts = new String(payloadBytes, StandardCharsets.UTF_8).split(":", 4);
+            if (parts.length != 4) {
+                return null;
+            }
+            return new TokenPayload(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[3]);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private byte[] sign(byte[] payload) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(secret);
+            return mac.doFinal(payload);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(HMAC_ALGORITHM + " is not available", e);
+        }
+    }
+
+    private static byte[] secretBytes(String configured) {
+        if (StringUtils.hasText(configured)) {
+            return configured.getBytes(StandardCharsets.UTF_8);
+        }
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        return key;
+    }
+
+    private static class TokenPayload {
+
+        final String tokenId;
+
+        final long userId;
+
+        final long expiresAt;
+
+        final String username;
+
+        TokenPayload(String tokenId, long userId, long expiresAt, String username) {
+            this.tokenId = tokenId;
+            this.userId = userId;
+            this.expiresAt = expiresAt;
+            this.username = username;
+        }
+    }
+}
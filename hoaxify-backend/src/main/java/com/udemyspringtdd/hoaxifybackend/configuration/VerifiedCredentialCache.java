@@ -0,0 +1,77 @@
+package com.udemyspringtdd.hoaxifybackend.configuration;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+/**
+ * Remembers which (username, password) pairs were recently checked against BCrypt, so repeated
+ * Basic auth requests can skip the hash. Only an HMAC of the presented password and the stored
+ * hash is kept, keyed with a secret that never leaves this process; a changed hash in the
+ * database therefore never matches an old entry.
+ */
+@Component
+public class VerifiedCredentialCache {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private final Cache<String, byte[]> verified;
+
+    private final SecretKeySpec secret;
+
+    public VerifiedCredentialCache(AppConfiguration appConfiguration, MeterRegistry meterRegistry) {
+        AppConfiguration.AuthCache config = appConfiguration.getAuthCache();
+        this.verified = Caffeine.newBuilder()
+                .maximumSize(config.getMaxSize())
+                .expireAfterWrite(config.getExpireAfterWrite())
+                .recordStats()
+                .build();
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        this.secret = new SecretKeySpec(key, HMAC_ALGORITHM);
+        CaffeineCacheMetrics.monitor(meterRegistry, verified, "verifiedCredentials");
+    }
+
+    public boolean isVerified(String username, String presentedPassword, String storedHash) {
+        byte[] digest = verified.getIfPresent(username);
+        return digest != null && MessageDigest.isEqual(digest, digest(presentedPassword, storedHash));
+    }
+
+    public void markVerified(String username, String presentedPassword, String storedHash) {
+        verified.put(username, digest(presentedPassword, storedHash));
+    }
+
+    public void invalidate(String username) {
+        verified.invalidate(username);
+    }
+
+    public void invalidateAll() {
+        verified.invalidateAll();
+    }
+
+    public CacheStats stats() {
+        return verified.stats();
+    }
+
+    private byte[] digest(String presentedPassword, String storedHash) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(secret);
+            mac.update(presentedPassword.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            return mac.doFinal(storedHash.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(HMAC_ALGORITHM + " is not available", e);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.udemyspringtdd.hoaxifybackend.configuration;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs Tomcat's request processing, and with it every service and repository call, on virtual threads.
+ * The code is still compiled for Java 17, so the executor is looked up at runtime.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "hoaxify.virtual-threads", name = "enabled", havingValue = "true")
+public class VirtualThreadConfiguration {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        ExecutorService executor = newVirtualThreadPerTaskExecutor();
+        return protocolHandler -> protocolHandler.setExecutor(executor);
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("hoaxify.virtual-threads.enabled needs a Java 21 runtime, this is Java " + Runtime.version(), e);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.udemyspringtdd.hoaxifybackend.file;
+
+import com.udemyspringtdd.hoaxifybackend.configuration.AppConfiguration;
+import com.udemyspringtdd.hoaxifybackend.error.BadRequestException;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
+/**
+ * Stores profile images on local disk under the SHA-256 of their content, so a name never points at
+ * different bytes and the same image uploaded twice is stored once.
+ */
+@Service
+public class FileService {
+
+    // an upload, or one of its thumbnails with the edge length after the underscore
+    static final Pattern PROFILE_IMAGE_NAME = Pattern.compile("([0-9a-f]{64})(?:_([0-9]+))?\\.(png|jpg|gif|webp)");
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    Path profileImagesPath;
+
+    public FileService(AppConfiguration appConfiguration) throws IOException {
+        this.profileImagesPath = Paths.get(appConfiguration.getProfileImages().getPath()).toAbsolutePath();
+        Files.createDirectories(profileImagesPath);
+    }
+
+    /**
+     * Moves the uploaded part into the image directory and returns its new name. The container has already
+     * written the part to a temporary file, which is renamed rather than copied; it is then read once to
+     * hash it and check that it is an image.
+     */
+    public String saveProfileImage(MultipartFile image) {
+        try {
+            Path upload = Files.createTempFile(profileImagesPath, "upload-", ".tmp");
+            try {
+                image.transferTo(upload.toFile());
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+                String extension = null;
+                try (FileChannel channel = FileChannel.open(upload)) {
+                    while (channel.read(buffer) >= 0) {
+                        buffer.flip();
+                        if (extension == null) {
+                            extension = imageExtension(buffer);
+                        }
+                        digest.update(buffer);
+                        buffer.clear();
+                    }
+                }
+                if (extension == null) {
+                    throw new BadRequestException("Only PNG, JPEG, GIF and WebP images are allowed");
+                }
+                String name = HexFormat.of().formatHex(digest.digest()) + "." + extension;
+                try {
+                    Files.move(upload, profileImagesPath.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+                } catch (FileAlreadyExistsException e) {
+                    // same content is already stored under this name
+                }
+                return name;
+            } finally {
+                Files.deleteIfExists(upload);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The stored image with this name, or null when the name is not one this service hands out or the file is gone.
+     */
+    public Path getProfileImage(String name) {
+        if (!PROFILE_IMAGE_NAME.matcher(name).matches()) {
+            return null;
+        }
+        Path image = profileImagesPath.resolve(name);
+        return Files.isRegularFile(image) ? image : null;
+    }
+
+    // sniffs the first bytes instead of trusting the file name or the part's content type
+    private static String imageExtension(ByteBuffer header) {
+        if (startsWith(header, 0, 0x89, 'P', 'N', 'G')) {
+            return "png";
+        }
+        if (startsWith(header, 0, 0xFF, 0xD8, 0xFF)) {
+            return "jpg";
+        }
+        if (startsWith(header, 0, 'G', 'I', 'F', '8')) {
+            return "gif";
+        }
+        if (startsWith(header, 0, 'R', 'I', 'F', 'F') && startsWith(header, 8, 'W', 'E', 'B', 'P')) {
+            return "webp";
+        }
+        return null;
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int offset, int... bytes) {
+        if (buffer.remaining() < offset + bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if ((buffer.get(buffer.position() + offset + i) & 0xFF) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
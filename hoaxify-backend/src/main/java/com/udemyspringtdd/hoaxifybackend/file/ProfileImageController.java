@@ -0,0 +1,83 @@
+package com.udemyspringtdd.hoaxifybackend.file;
+
+import com.udemyspringtdd.hoaxifybackend.configuration.AppConfiguration;
+import com.udemyspringtdd.hoaxifybackend.error.NotFoundException;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves profile images. On Tomcat the file is handed to the connector's sendfile support: the request
+ * thread returns right after the headers are set and the poller copies the file to the socket in the
+ * kernel. Elsewhere the file is copied with {@link FileChannel#transferTo}.
+ */
+@RestController
+public class ProfileImageController {
+
+    // request attributes of Tomcat's sendfile support, see org.apache.coyote.Constants
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    FileService fileService;
+
+    String cacheControl;
+
+    public ProfileImageController(FileService fileService, AppConfiguration appConfiguration) {
+        this.fileService = fileService;
+        long maxAge = appConfiguration.getProfileImages().getCacheMaxAge().getSeconds();
+        this.cacheControl = CacheControl.maxAge(maxAge, TimeUnit.SECONDS).cachePublic().getHeaderValue() + ", immutable";
+    }
+
+    @GetMapping("/images/profile/{name:.+}")
+    void getProfileImage(@PathVariable String name, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Path image = fileService.getProfileImage(name);
+        if (image == null) {
+            throw new NotFoundException(name + " not found");
+        }
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        // the name is the content hash, so it is a strong validator as it stands
+        String etag = "\"" + name.substring(0, name.indexOf('.')) + "\"";
+        if (new ServletWebRequest(request, response).checkNotModified(etag)) {
+            return;
+        }
+        long length = Files.size(image);
+        response.setContentType(MediaTypeFactory.getMediaType(name).orElse(MediaType.APPLICATION_OCTET_STREAM).toString());
+        response.setContentLengthLong(length);
+        if ("HEAD".equals(request.getMethod())) {
+            return;
+        }
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            request.setAttribute(SENDFILE_FILENAME, image.toString());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, length);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(image)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = 0;
+            while (position < length) {
+                position += channel.transferTo(position, length - position, out);
+            }
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.udemyspringtdd.hoaxifybackend.file;
+
+import com.udemyspringtdd.hoaxifybackend.configuration.AppConfiguration;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Makes square thumbnails of uploaded profile images on a bounded pool, so views never resize on request.
+ * A full queue makes the uploading thread resize as well, which slows uploads down instead of piling up
+ * work. Until the thumbnails of an image exist, views keep pointing at the upload itself.
+ *
+ * <p>A small file can declare a huge image, so the dimensions are read from the header first and images with
+ * more pixels than configured are never decoded; views keep pointing at those uploads for good. Uploads that
+ * cannot be read get an empty marker file next to them, so later startups do not queue them again.
+ */
+@Service
+public class ThumbnailService {
+
+    private static final Logger log = LoggerFactory.getLogger(ThumbnailService.class);
+
+    private static final String UNREADABLE_MARKER = ".unreadable";
+
+    FileService fileService;
+
+    List<Integer> sizes;
+
+    ThreadPoolExecutor resizeExecutor;
+
+    Timer resizeTimer;
+
+    long maxImagePixels;
+
+    Counter rejected;
+
+    // names of the thumbnails on disk, so resolving a view's image is a lookup rather than a file system call
+    Set<String> thumbnails = ConcurrentHashMap.newKeySet();
+
+    // uploads with a marker, which never get thumbnails
+    Set<String> unreadable = ConcurrentHashMap.newKeySet();
+
+    // moves whenever images resolve differently, which changes the views without any write to the users
+    AtomicLong generation = new AtomicLong();
+
+    public ThumbnailService(FileService fileService, AppConfiguration appConfiguration, MeterRegistry meterRegistry) {
+        this.fileService = fileService;
+        AppConfiguration.ProfileImages config = appConfiguration.getProfileImages();
+        this.sizes = config.getThumbnailSizes().stream().sorted().distinct().collect(Collectors.toList());
+        int threads = config.getThumbnailThreads() > 0 ? config.getThumbnailThreads() : Runtime.getRuntime().availableProcessors();
+        this.resizeExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(config.getThumbnailQueueSize()), new CustomizableThreadFactory("thumbnail-"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        // executor.queued, executor.queue.remaining, executor.active and executor.completed tagged name=thumbnails
+        new ExecutorServiceMetrics(resizeExecutor, "thumbnails", Tags.empty()).bindTo(meterRegistry);
+        this.resizeTimer = Timer.builder("thumbnails.resize")
+                .description("Time to make all thumbnails of one upload")
+                .register(meterRegistry);
+        this.maxImagePixels = config.getMaxImagePixels();
+        this.rejected = Counter.builder("thumbnails.rejected")
+                .description("Uploads not resized because they declare more pixels than allowed")
+                .register(meterRegistry);
+    }
+
+    // picks up thumbnails made by earlier runs and makes the ones missing, e.g. after the sizes changed
+    @PostConstruct
+    void scan() throws IOException {
+        try (Stream<Path> files = Files.list(fileService.profileImagesPath)) {
+            files.map(file -> file.getFileName().toString()).forEach(name -> {
+                Matcher matcher = FileService.PROFILE_IMAGE_NAME.matcher(name);
+                if (matcher.matches() && matcher.group(2) != null) {
+                    thumbnails.add(name);
+                } else if (name.endsWith(UNREADABLE_MARKER)) {
+                    unreadable.add(name.substring(0, name.length() - UNREADABLE_MARKER.length()));
+                }
+            });
+        }
+        try (Stream<Path> files = Files.list(fileService.profileImagesPath)) {
+            files.map(file -> file.getFileName().toString())
+                    // ImageIO cannot read WebP, those uploads never get thumbnails
+                    .filter(name -> isUpload(name) && !name.endsWith(".webp") && !unreadable.contains(name) && !hasThumbnails(name))
+                    .forEach(this::submit);
+        }
+    }
+
+    /**
+     * Queues the thumbnails of a stored upload.
+     */
+    public void submit(String image) {
+        resizeExecutor.execute(() -> resizeTimer.record(() -> createThumbnails(image)));
+    }
+
+    /**
+     * The smallest thumbnail of the image once it exists, otherwise the image itself.
+     */
+    public String listImage(String image) {
+        return variant(image, sizes.get(0));
+    }
+
+    /**
+     * The largest thumbnail of the image once it exists, otherwise the image itself.
+     */
+    public String profileImage(String image) {
+        return variant(image, sizes.get(sizes.size() - 1));
+    }
+
+    public long generation() {
+        return generation.get();
+    }
+
+    private String variant(String image, int size) {
+        if (image == null || !isUpload(image)) {
+            return image;
+        }
+        String thumbnail = thumbnailName(image, size);
+        return thumbnails.contains(thumbnail) ? thumbnail : image;
+    }
+
+    private void createThumbnails(String image) {
+        Path source = fileService.profileImagesPath.resolve(image);
+        BufferedImage original;
+        try {
+            original = read(source);
+        } catch (IOException | RuntimeException e) {
+            // a broken upload must not take the resize thread, or the uploading request, down with it
+            log.warn("Could not read {}", image, e);
+            original = null;
+        }
+        if (original == null) {
+            markUnreadable(image);
+            return;
+        }
+        try {
+            for (int size : sizes) {
+                String name = thumbnailName(image, size);
+                if (thumbnails.contains(name)) {
+                    continue;
+                }
+                BufferedImage thumbnail = resize(original, size);
+                Path temp = Files.createTempFile(fileService.profileImagesPath, "thumbnail-", ".tmp");
+                try {
+                    ImageIO.write(thumbnail, extension(name), temp.toFile());
+                    Files.move(temp, fileService.profileImagesPath.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+                thumbnails.add(name);
+                generation.incrementAndGet();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not create thumbnails of {}", image, e);
+        }
+    }
+
+    private void markUnreadable(String image) {
+        try {
+            Files.write(fileService.profileImagesPath.resolve(image + UNREADABLE_MARKER), new byte[0]);
+            unreadable.add(image);
+        } catch (IOException e) {
+            log.warn("Could not mark {} as unreadable, it is tried again on the next start", image, e);
+        }
+    }
+
+    // null when ImageIO has no reader for the format (WebP) or the image is too large to decode
+    private BufferedImage read(Path source) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source.toFile())) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > maxImagePixels) {
+                    rejected.increment();
+                    log.info("Not resizing {}, it declares {} pixels", source.getFileName(), pixels);
+                    return null;
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // center crop to a square, then scale it down in one pass
+    private static BufferedImage resize(BufferedImage original, int size) {
+        int edge = Math.min(original.getWidth(), original.getHeight());
+        int x = (original.getWidth() - edge) / 2;
+        int y = (original.getHeight() - edge) / 2;
+        boolean alpha = original.getColorModel().hasAlpha();
+        BufferedImage thumbnail = new BufferedImage(size, size, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = thumbnail.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(original, 0, 0, size, size, x, y, x + edge, y + edge, null);
+        } finally {
+            graphics.dispose();
+        }
+        return thumbnail;
+    }
+
+    private boolean hasThumbnails(String image) {
+        return sizes.stream().allMatch(size -> thumbnails.contains(thumbnailName(image, size)));
+    }
+
+    private static boolean isUpload(String name) {
+        Matcher matcher = FileService.PROFILE_IMAGE_NAME.matcher(name);
+        return matcher.matches() && matcher.group(2) == null;
+    }
+
+    // JPEG stays JPEG, everything else becomes PNG so transparency survives
+    private static String thumbnailName(String image, int size) {
+        int dot = image.lastIndexOf('.');
+        String extension = image.endsWith(".jpg") ? "jpg" : "png";
+        return image.substring(0, dot) + "_" + size + "." + extension;
+    }
+
+    private static String extension(String name) {
+        return name.substring(name.lastIndexOf('.') + 1);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        resizeExecutor.shutdown();
+    }
+}
@@ -0,0 +1,74 @@
+package com.udemyspringtdd.hoaxifybackend.reactive;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.udemyspringtdd.hoaxifybackend.error.ApiError;
+import org.springframework.boot.web.error.ErrorAttributeOptions;
+import org.springframework.boot.web.error.ErrorAttributeOptions.Include;
+import org.springframework.boot.web.reactive.error.ErrorAttributes;
+import org.springframework.boot.web.reactive.error.ErrorWebExceptionHandler;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * Renders every error as an {@link ApiError}, like {@code ErrorHandler} does for the servlet application.
+ * Ordered ahead of Spring Boot's handler, which would answer with its own error attributes.
+ */
+@Component
+@Order(-2)
+@Profile("reactive")
+public class ReactiveErrorHandler implements ErrorWebExceptionHandler {
+
+    ErrorAttributes errorAttributes;
+
+    ObjectMapper objectMapper;
+
+    public ReactiveErrorHandler(ErrorAttributes errorAttributes, ObjectMapper objectMapper) {
+        this.errorAttributes = errorAttributes;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public Mono<Void> handle(ServerWebExchange exchange, Throwable exception) {
+        if (exchange.getResponse().isCommitted()) {
+            return Mono.error(exception);
+        }
+        ApiError apiError;
+        if (exception instanceof ValidationFailedException) {
+            apiError = new ApiError(400, "validation error", exchange.getRequest().getPath().value());
+            apiError.setValidationErrors(((ValidationFailedException) exception).getValidationErrors());
+        } else {
+            errorAttributes.storeErrorInformation(exception, exchange);
+            ServerRequest request = ServerRequest.create(exchange, HandlerStrategies.withDefaults().messageReaders());
+            Map<String, Object> attributes = errorAttributes.getErrorAttributes(request, ErrorAttributeOptions.of(Include.MESSAGE));
+            apiError = new ApiError((Integer) attributes.get("status"), (String) attributes.get("message"), (String) attributes.get("path"));
+        }
+        return write(exchange, objectMapper, apiError);
+    }
+
+    /**
+     * Writes {@code apiError} as the JSON body, with its status as the response status.
+     */
+    static Mono<Void> write(ServerWebExchange exchange, ObjectMapper objectMapper, ApiError apiError) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.valueOf(apiError.getStatus()));
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(apiError);
+        } catch (JsonProcessingException e) {
+            return Mono.error(e);
+        }
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(body)));
+    }
+}
@@ -0,0 +1,56 @@
+package com.udemyspringtdd.hoaxifybackend.reactive;
+
+import com.udemyspringtdd.hoaxifybackend.configuration.AppConfiguration;
+import com.udemyspringtdd.hoaxifybackend.configuration.TokenService;
+import com.udemyspringtdd.hoaxifybackend.user.User;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.security.servlet.UserDetailsServiceAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Profile;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import reactor.core.publisher.Flux;
+
+/**
+ * Non-blocking variant of the user API on WebFlux and R2DBC, serving the same {@code /api/1.0/users} and
+ * {@code /api/1.0/login} contract as {@link com.udemyspringtdd.hoaxifybackend.HoaxifyBackendApplication}.
+ * It only scans this package, and every bean in it is limited to the {@code reactive} profile so the
+ * servlet application never picks them up.
+ */
+@SpringBootApplication(exclude = {DataSourceAutoConfiguration.class, UserDetailsServiceAutoConfiguration.class})
+@Import({AppConfiguration.class, TokenService.class})
+@Profile("reactive")
+public class ReactiveHoaxifyApplication {
+
+    public static void main(String[] args) {
+        new SpringApplicationBuilder(ReactiveHoaxifyApplication.class).profiles("reactive").run(args);
+    }
+
+    // Tomcat is on the classpath for the servlet application, but the reactive stack should run on an event loop
+    @Bean
+    NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    @Bean
+    @Profile("!test")
+    CommandLineRunner run(ReactiveUserRepository userRepository, PasswordEncoder passwordEncoder, AppConfiguration appConfiguration){
+        return (args) -> {
+            String password = passwordEncoder.encode("P4ssword");
+            Flux.range(1, appConfiguration.getSeed().getUsers())
+                    .map(i -> {
+                        User user = new User();
+                        user.setUsername("user" + i);
+                        user.setDisplayName("display1"+i);
+                        user.setPassword(password);
+                        return user;
+                    })
+                    .concatMap(userRepository::save)
+                    .blockLast();
+        };
+    }
+}
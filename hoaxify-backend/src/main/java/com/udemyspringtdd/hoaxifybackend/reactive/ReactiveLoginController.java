@@ -0,0 +1,42 @@
+package com.udemyspringtdd.hoaxifybackend.reactive;
+
+import com.udemyspringtdd.hoaxifybackend.configuration.TokenService;
+import com.udemyspringtdd.hoaxifybackend.shared.CurrentUser;
+import com.udemyspringtdd.hoaxifybackend.shared.GenericResponse;
+import com.udemyspringtdd.hoaxifybackend.user.User;
+import com.udemyspringtdd.hoaxifybackend.user.vm.LoginVM;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+@RestController
+@Profile("reactive")
+public class ReactiveLoginController {
+
+    ReactiveUserService userService;
+
+    TokenService tokenService;
+
+    public ReactiveLoginController(ReactiveUserService userService, TokenService tokenService){
+        this.userService = userService;
+        this.tokenService = tokenService;
+    }
+
+    @PostMapping("/api/1.0/login")
+    Mono<LoginVM> handleLogin(@CurrentUser User loggedInUser){
+        // a token principal only carries id and username, so the profile fields are read again
+        return userService.getByUsername(loggedInUser.getUsername())
+                .map(user -> new LoginVM(user, tokenService.issue(user)));
+    }
+
+    @PostMapping("/api/1.0/logout")
+    GenericResponse handleLogout(ServerHttpRequest request){
+        String token = ReactiveSecurityConfiguration.resolveToken(request);
+        if (token != null){
+            tokenService.revoke(token);
+        }
+        return new GenericResponse("Logged out");
+    }
+}
@@ -0,0 +1,124 @@
+package com.udemyspringtdd.hoaxifybackend.reactive;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.udemyspringtdd.hoaxifybackend.configuration.AppConfiguration;
+import com.udemyspringtdd.hoaxifybackend.configuration.TokenAuthenticationFilter;
+import com.udemyspringtdd.hoaxifybackend.configuration.TokenService;
+import com.udemyspringtdd.hoaxifybackend.error.ApiError;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UserDetailsRepositoryReactiveAuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.config.annotation.method.configuration.EnableReactiveMethodSecurity;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.ServerAuthenticationEntryPoint;
+import org.springframework.security.web.server.authentication.AuthenticationWebFilter;
+import org.springframework.security.web.server.authentication.ServerAuthenticationEntryPointFailureHandler;
+import org.springframework.security.web.server.authorization.ServerAccessDeniedHandler;
+import org.springframework.security.web.server.context.NoOpServerSecurityContextRepository;
+import org.springframework.security.web.server.util.matcher.NegatedServerWebExchangeMatcher;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatchers;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+@EnableWebFluxSecurity
+@EnableReactiveMethodSecurity
+@Profile("reactive")
+public class ReactiveSecurityConfiguration {
+
+    @Autowired
+    AppConfiguration appConfiguration;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Bean
+    SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http, TokenService tokenService) {
+        // same responses as the servlet application: an ApiError and no "WWW-Authenticate" header
+        ServerAuthenticationEntryPoint entryPoint = (exchange, e) -> ReactiveErrorHandler.write(exchange, objectMapper,
+                new ApiError(401, HttpStatus.UNAUTHORIZED.getReasonPhrase(), exchange.getRequest().getPath().value()));
+        ServerAccessDeniedHandler accessDeniedHandler = (exchange, e) -> ReactiveErrorHandler.write(exchange, objectMapper,
+                new ApiError(403, HttpStatus.FORBIDDEN.getReasonPhrase(), exchange.getRequest().getPath().value()));
+
+        // Bearer tokens are verified locally, without touching the database or BCrypt
+        AuthenticationWebFilter tokenFilter = new AuthenticationWebFilter(tokenAuthenticationManager(tokenService));
+        tokenFilter.setServerAuthenticationConverter(exchange -> Mono.justOrEmpty(resolveToken(exchange.getRequest()))
+                .map(token -> new UsernamePasswordAuthenticationToken(token, token)));
+        tokenFilter.setAuthenticationFailureHandler(new ServerAuthenticationEntryPointFailureHandler(entryPoint));
+        // new tokens are only issued for a password, otherwise a stolen token could renew itself forever
+        tokenFilter.setRequiresAuthenticationMatcher(new NegatedServerWebExchangeMatcher(
+                ServerWebExchangeMatchers.pathMatchers(HttpMethod.POST, "/api/1.0/login")));
+
+        return http
+                .csrf().disable()
+                .formLogin().disable()
+                .logout().disable()
+                .httpBasic().authenticationEntryPoint(entryPoint).and()
+                .exceptionHandling().authenticationEntryPoint(entryPoint).accessDeniedHandler(accessDeniedHandler).and()
+                .securityContextRepository(NoOpServerSecurityContextRepository.getInstance())
+                .addFilterAt(tokenFilter, SecurityWebFiltersOrder.HTTP_BASIC)
+                .authorizeExchange()
+                .pathMatchers(HttpMethod.POST, "/api/1.0/login").authenticated()
+                .pathMatchers(HttpMethod.POST, "/api/1.0/logout").authenticated()
+                .pathMatchers(HttpMethod.PUT, "/api/1.0/users/{id:[0-9]+}").authenticated()
+                .anyExchange().permitAll()
+                .and()
+                .build();
+    }
+
+    /**
+     * Checks Basic credentials; the BCrypt comparison runs on {@link #passwordHashScheduler()}.
+     */
+    @Bean
+    ReactiveAuthenticationManager passwordAuthenticationManager(ReactiveUserRepository userRepository) {
+        UserDetailsRepositoryReactiveAuthenticationManager manager = new UserDetailsRepositoryReactiveAuthenticationManager(
+                username -> userRepository.findByUsername(username).cast(UserDetails.class));
+        manager.setPasswordEncoder(passwordEncoder());
+        manager.setScheduler(passwordHashScheduler());
+        return manager;
+    }
+
+    /**
+     * Bounded pool for BCrypt, so hashing never blocks an event loop thread and a burst of logins queues
+     * instead of starting an unbounded number of threads.
+     */
+    @Bean(destroyMethod = "dispose")
+    Scheduler passwordHashScheduler() {
+        AppConfiguration.Reactive config = appConfiguration.getReactive();
+        int threads = config.getHashingThreads() > 0 ? config.getHashingThreads() : Runtime.getRuntime().availableProcessors();
+        return Schedulers.newBoundedElastic(threads, config.getHashingQueueSize(), "password-hash");
+    }
+
+    @Bean
+    public PasswordEncoder passwordEncoder(){
+        return new BCryptPasswordEncoder();
+    }
+
+    private static ReactiveAuthenticationManager tokenAuthenticationManager(TokenService tokenService) {
+        return authentication -> Mono.justOrEmpty(tokenService.verify((String) authentication.getCredentials()))
+                .switchIfEmpty(Mono.error(() -> new BadCredentialsException("Invalid access token")))
+                .map(user -> new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities()));
+    }
+
+    static String resolveToken(ServerHttpRequest request) {
+        String header = request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        if (header == null || !header.startsWith(TokenAuthenticationFilter.BEARER_PREFIX)) {
+            return null;
+        }
+        return header.substring(TokenAuthenticationFilter.BEARER_PREFIX.length()).trim();
+    }
+}
@@ -0,0 +1,53 @@
+package com.udemyspringtdd.hoaxifybackend.reactive;
+
+import com.udemyspringtdd.hoaxifybackend.shared.CurrentUser;
+import com.udemyspringtdd.hoaxifybackend.shared.CursorSlice;
+import com.udemyspringtdd.hoaxifybackend.shared.GenericResponse;
+import com.udemyspringtdd.hoaxifybackend.user.User;
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserImportVM;
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserUpdateVM;
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserVM;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+@RestController
+@RequestMapping("/api/1.0")
+@Profile("reactive")
+public class ReactiveUserController {
+
+    ReactiveUserService userService;
+
+    public ReactiveUserController(ReactiveUserService userService){
+        this.userService = userService;
+    }
+
+    @PostMapping("/users")
+    Mono<GenericResponse> createUser(@RequestBody UserImportVM user) {
+        return userService.save(user).thenReturn(new GenericResponse("User Saved!"));
+    }
+
+    @GetMapping("/users")
+    Mono<Page<UserVM>> getUsers(@CurrentUser User loggedInUser, Pageable page){
+        return userService.getUsers(loggedInUser, page);
+    }
+
+    @GetMapping(value = "/users", params = "after")
+    Mono<CursorSlice<UserVM>> getUsersAfter(@CurrentUser User loggedInUser, @RequestParam String after, Pageable page){
+        return userService.getUsersAfter(loggedInUser, after, page.getPageSize());
+    }
+
+    @GetMapping("/users/{username}")
+    Mono<UserVM> getUserByName(@PathVariable String username){
+        return userService.getByUsername(username).map(UserVM::new);
+    }
+
+    @PutMapping("/users/{id:[0-9]+}")
+    @PreAuthorize("#id == principal.id")
+    Mono<UserVM> updateUser(@PathVariable long id, @RequestBody (required = false) UserUpdateVM userUpdate){
+        return userService.update(id, userUpdate).map(UserVM::new);
+    }
+}
@@ -0,0 +1,128 @@
+package com.udemyspringtdd.hoaxifybackend.reactive;
+
+import com.udemyspringtdd.hoaxifybackend.user.User;
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserVM;
+import io.r2dbc.spi.Row;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * The queries of {@code UserRepository} written against {@link DatabaseClient}. Listings read only the
+ * {@link UserVM} columns, like the JPA projections.
+ */
+@Component
+@Profile("reactive")
+public class ReactiveUserRepository {
+
+    private static final String USER_VM_COLUMNS = "select id, username, display_name, image from user";
+
+    DatabaseClient databaseClient;
+
+    public ReactiveUserRepository(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    // the unique index on the key finds the row; the name itself still has to match exactly
+    public Mono<User> findByUsername(String username) {
+        return databaseClient.sql("select id, username, display_name, password, image from user where username_key = :usernameKey")
+                .bind("usernameKey", User.usernameKey(username))
+                .map((row, metadata) -> toUser(row))
+                .one()
+                .filter(user -> user.getUsername().equals(username));
+    }
+
+    public Mono<User> findById(long id) {
+        return databaseClient.sql("select id, username, display_name, password, image from user where id = :id")
+                .bind("id", id)
+                .map((row, metadata) -> toUser(row))
+                .one();
+    }
+
+    // a name is taken when any user has it in any case
+    public Mono<Boolean> existsByUsername(String username) {
+        return databaseClient.sql("select 1 from user where username_key = :usernameKey")
+                .bind("usernameKey", User.usernameKey(username))
+                .map((row, metadata) -> 1)
+                .first()
+                .hasElement();
+    }
+
+    public Mono<User> save(User user) {
+        return databaseClient.sql("insert into user (username, username_key, display_name, password) "
+                        + "values (:username, :usernameKey, :displayName, :password)")
+                .bind("username", user.getUsername())
+                .bind("usernameKey", user.getUsernameKey())
+                .bind("displayName", user.getDisplayName())
+                .bind("password", user.getPassword())
+                .filter(statement -> statement.returnGeneratedValues("id"))
+                .map((row, metadata) -> row.get("id", Long.class))
+                .one()
+                .map(id -> {
+                    user.setId(id);
+                    return user;
+                });
+    }
+
+    public Mono<Integer> updateDisplayName(long id, String displayName) {
+        DatabaseClient.GenericExecuteSpec update = databaseClient.sql("update user set display_name = :displayName where id = :id")
+                .bind("id", id);
+        update = displayName == null ? update.bindNull("displayName", String.class) : update.bind("displayName", displayName);
+        return update.fetch().rowsUpdated();
+    }
+
+    /**
+     * A page of users in id order, leaving out {@code excludedUsername} when it is not {@code null}.
+     */
+    public Flux<UserVM> findUserVMs(String excludedUsername, long offset, int limit) {
+        String where = excludedUsername == null ? "" : " where username <> :username";
+        DatabaseClient.GenericExecuteSpec query = databaseClient.sql(USER_VM_COLUMNS + where + " order by id limit :limit offset :offset")
+                .bind("limit", limit)
+                .bind("offset", offset);
+        if (excludedUsername != null) {
+            query = query.bind("username", excludedUsername);
+        }
+        return query.map((row, metadata) -> toUserVM(row)).all();
+    }
+
+    public Mono<Long> count(String excludedUsername) {
+        if (excludedUsername == null) {
+            return databaseClient.sql("select count(*) from user").map((row, metadata) -> row.get(0, Long.class)).one();
+        }
+        return databaseClient.sql("select count(*) from user where username <> :username")
+                .bind("username", excludedUsername)
+                .map((row, metadata) -> row.get(0, Long.class))
+                .one();
+    }
+
+    /**
+     * Keyset scroll: users with an id above {@code afterId} in id order.
+     */
+    public Flux<UserVM> findUserVMsAfter(long afterId, String excludedUsername, int limit) {
+        String where = " where id > :afterId" + (excludedUsername == null ? "" : " and username <> :username");
+        DatabaseClient.GenericExecuteSpec query = databaseClient.sql(USER_VM_COLUMNS + where + " order by id limit :limit")
+                .bind("afterId", afterId)
+                .bind("limit", limit);
+        if (excludedUsername != null) {
+            query = query.bind("username", excludedUsername);
+        }
+        return query.map((row, metadata) -> toUserVM(row)).all();
+    }
+
+    private static User toUser(Row row) {
+        User user = new User();
+        user.setId(row.get("id", Long.class));
+        user.setUsername(row.get("username", String.class));
+        user.setDisplayName(row.get("display_name", String.class));
+        user.setPassword(row.get("password", String.class));
+        user.setImage(row.get("image", String.class));
+        return user;
+    }
+
+    private static UserVM toUserVM(Row row) {
+        return new UserVM(row.get("id", Long.class), row.get("username", String.class),
+                row.get("display_name", String.class), row.get("image", String.class));
+    }
+}
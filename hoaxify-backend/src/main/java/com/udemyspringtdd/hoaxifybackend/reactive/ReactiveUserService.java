@@ -0,0 +1,120 @@
+package com.udemyspringtdd.hoaxifybackend.reactive;
+
+import com.udemyspringtdd.hoaxifybackend.error.NotFoundException;
+import com.udemyspringtdd.hoaxifybackend.shared.CursorSlice;
+import com.udemyspringtdd.hoaxifybackend.user.User;
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserImportVM;
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserUpdateVM;
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserVM;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ResourceBundle;
+
+@Service
+@Profile("reactive")
+public class ReactiveUserService {
+
+    private static final String USERNAME_IN_USE = ResourceBundle.getBundle("ValidationMessages")
+            .getString("hoaxifybackend.constraints.username.UniqueUsername.message");
+
+    ReactiveUserRepository userRepository;
+
+    PasswordEncoder passwordEncoder;
+
+    Scheduler passwordHashScheduler;
+
+    Validator validator;
+
+    public ReactiveUserService(ReactiveUserRepository userRepository, PasswordEncoder passwordEncoder,
+                               @Qualifier("passwordHashScheduler") Scheduler passwordHashScheduler, Validator validator) {
+        this.userRepository = userRepository;
+        this.passwordEncoder = passwordEncoder;
+        this.passwordHashScheduler = passwordHashScheduler;
+        this.validator = validator;
+    }
+
+    /**
+     * Signs a user up. The body is checked against the {@code User} constraints; the unique username check
+     * is a reactive query here instead of the blocking {@code @UniqueUsername} validator.
+     */
+    public Mono<User> save(UserImportVM signup) {
+        Map<String, String> validationErrors = new HashMap<>();
+        for (ConstraintViolation<UserImportVM> violation : validator.validate(signup)) {
+            validationErrors.put(violation.getPropertyPath().toString(), violation.getMessage());
+        }
+        Mono<Boolean> usernameInUse = signup.getUsername() == null ? Mono.just(false) : userRepository.existsByUsername(signup.getUsername());
+        return usernameInUse.flatMap(inUse -> {
+            if (inUse) {
+                validationErrors.putIfAbsent("username", USERNAME_IN_USE);
+            }
+            if (!validationErrors.isEmpty()) {
+                return Mono.error(new ValidationFailedException(validationErrors));
+            }
+            return encode(signup.getPassword()).flatMap(hash -> {
+                User user = new User();
+                user.setUsername(signup.getUsername());
+                user.setDisplayName(signup.getDisplayName());
+                user.setPassword(hash);
+                // the check above saw the name free, a concurrent signup took it before the insert
+                return userRepository.save(user).onErrorMap(ReactiveUserService::isUsernameKeyViolation,
+                        e -> new ValidationFailedException(Map.of("username", USERNAME_IN_USE)));
+            });
+        });
+    }
+
+    public Mono<Page<UserVM>> getUsers(User loggedInUser, Pageable pageable) {
+        String excluded = loggedInUser == null ? null : loggedInUser.getUsername();
+        return Mono.zip(userRepository.findUserVMs(excluded, pageable.getOffset(), pageable.getPageSize()).collectList(),
+                        userRepository.count(excluded))
+                .map(pageAndTotal -> new PageImpl<>(pageAndTotal.getT1(), pageable, pageAndTotal.getT2()));
+    }
+
+    public Mono<CursorSlice<UserVM>> getUsersAfter(User loggedInUser, String cursor, int size) {
+        long afterId = CursorSlice.decodeCursor(cursor);
+        String excluded = loggedInUser == null ? null : loggedInUser.getUsername();
+        // one extra row tells whether there is a next slice
+        return userRepository.findUserVMsAfter(afterId, excluded, size + 1).collectList().map(rows -> {
+            if (rows.size() <= size) {
+                return new CursorSlice<>(rows, size, null);
+            }
+            List<UserVM> content = rows.subList(0, size);
+            return new CursorSlice<>(content, size, CursorSlice.encodeCursor(content.get(size - 1).getId()));
+        });
+    }
+
+    public Mono<User> getByUsername(String username) {
+        return userRepository.findByUsername(username)
+                .switchIfEmpty(Mono.error(() -> new NotFoundException(username + " not found")));
+    }
+
+    public Mono<User> update(long id, UserUpdateVM userUpdateVM) {
+        return userRepository.updateDisplayName(id, userUpdateVM.getDisplayName())
+                .then(userRepository.findById(id));
+    }
+
+    // R2DBC drivers only name the constraint in the message
+    private static boolean isUsernameKeyViolation(Throwable e) {
+        return e instanceof DataIntegrityViolationException && e.getMessage() != null
+                && e.getMessage().toLowerCase(Locale.ROOT).contains(User.USERNAME_KEY_CONSTRAINT);
+    }
+
+    // BCrypt takes tens of milliseconds of CPU, which must never run on an event loop thread
+    private Mono<String> encode(String rawPassword) {
+        return Mono.fromCallable(() -> passwordEncoder.encode(rawPassword)).subscribeOn(passwordHashScheduler);
+    }
+}
@@ -0,0 +1,29 @@
+package com.udemyspringtdd.hoaxifybackend.reactive;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.web.ReactivePageableHandlerMethodArgumentResolver;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import org.springframework.web.reactive.result.method.annotation.ArgumentResolverConfigurer;
+
+@Configuration
+@Profile("reactive")
+public class ReactiveWebConfiguration implements WebFluxConfigurer {
+
+    // Spring Boot only configures Pageable parameters for Spring MVC, so the same settings are applied here
+    @Value("${spring.data.web.pageable.default-page-size}")
+    int defaultPageSize;
+
+    @Value("${spring.data.web.pageable.max-page-size}")
+    int maxPageSize;
+
+    @Override
+    public void configureArgumentResolvers(ArgumentResolverConfigurer configurer) {
+        ReactivePageableHandlerMethodArgumentResolver pageableResolver = new ReactivePageableHandlerMethodArgumentResolver();
+        pageableResolver.setFallbackPageable(PageRequest.of(0, defaultPageSize));
+        pageableResolver.setMaxPageSize(maxPageSize);
+        configurer.addCustomResolver(pageableResolver);
+    }
+}
@@ -0,0 +1,19 @@
+package com.udemyspringtdd.hoaxifybackend.reactive;
+
+import lombok.Getter;
+
+import java.util.Map;
+
+/**
+ * Field errors of a request body, rendered as the {@code validationErrors} of an {@code ApiError}.
+ */
+@Getter
+public class ValidationFailedException extends RuntimeException {
+
+    private final Map<String, String> validationErrors;
+
+    public ValidationFailedException(Map<String, String> validationErrors) {
+        super("validation error");
+        this.validationErrors = validationErrors;
+    }
+}
@@ -0,0 +1,64 @@
+package com.udemyspringtdd.hoaxifybackend.shared;
+
+import com.udemyspringtdd.hoaxifybackend.error.BadRequestException;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * A page of a keyset scroll. Unlike a {@code Page} it has no totals, so no count query is needed;
+ * {@code next} is the opaque cursor for the following slice and is {@code null} on the last one.
+ */
+@Data
+@NoArgsConstructor
+public class CursorSlice<T> {
+
+    private List<T> content;
+
+    private int size;
+
+    private int numberOfElements;
+
+    private boolean last;
+
+    private String next;
+
+    public CursorSlice(List<T> content, int size, String next){
+        this.content = content;
+        this.size = size;
+        this.numberOfElements = content.size();
+        this.last = next == null;
+        this.next = next;
+    }
+
+    public <R> CursorSlice<R> map(Function<? super T, ? extends R> converter){
+        List<R> converted = content.stream().map(converter).collect(Collectors.toList());
+        return new CursorSlice<>(converted, size, next);
+    }
+
+    /**
+     * Cursors are the id of the last row of a slice, base64url encoded so clients treat them as opaque.
+     */
+    public static String encodeCursor(long id){
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Long.toString(id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the id a cursor stands for, 0 for the first slice.
+     */
+    public static long decodeCursor(String cursor){
+        if (cursor == null || cursor.isEmpty()){
+            return 0;
+        }
+        try {
+            return Long.parseLong(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid cursor " + cursor);
+        }
+    }
+}
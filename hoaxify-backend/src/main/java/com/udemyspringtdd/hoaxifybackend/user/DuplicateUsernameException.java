@@ -0,0 +1,16 @@
+package com.udemyspringtdd.hoaxifybackend.user;
+
+import java.util.ResourceBundle;
+
+/**
+ * A signup lost the race for its username: the unique index turned it away after validation had let it through.
+ */
+public class DuplicateUsernameException extends RuntimeException {
+
+    static final String MESSAGE = ResourceBundle.getBundle("ValidationMessages")
+            .getString("hoaxifybackend.constraints.username.UniqueUsername.message");
+
+    public DuplicateUsernameException(Throwable cause) {
+        super(MESSAGE, cause);
+    }
+}
@@ -0,0 +1,11 @@
+package com.udemyspringtdd.hoaxifybackend.user;
+
+/**
+ * Every export slot is taken; each running export holds a database connection until its client has read it all.
+ */
+public class ExportsExhaustedException extends RuntimeException {
+
+    public ExportsExhaustedException() {
+        super("Too many exports are running, try again later");
+    }
+}
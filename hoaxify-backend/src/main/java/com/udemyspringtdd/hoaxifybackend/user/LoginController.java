@@ -1,15 +1,40 @@
 package com.udemyspringtdd.hoaxifybackend.user;
 
+import com.udemyspringtdd.hoaxifybackend.configuration.TokenAuthenticationFilter;
+import com.udemyspringtdd.hoaxifybackend.configuration.TokenService;
 import com.udemyspringtdd.hoaxifybackend.shared.CurrentUser;
-import com.udemyspringtdd.hoaxifybackend.user.vm.UserVM;
+import com.udemyspringtdd.hoaxifybackend.shared.GenericResponse;
+import com.udemyspringtdd.hoaxifybackend.user.vm.LoginVM;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.servlet.http.HttpServletRequest;
+
 @RestController
 public class LoginController {
 
+    UserService userService;
+
+    TokenService tokenService;
+
+    public LoginController(UserService userService, TokenService tokenService){
+        this.userService = userService;
+        this.tokenService = tokenService;
+    }
+
     @PostMapping("/api/1.0/login")
-    UserVM handleLogin(@CurrentUser User loggedInUser){
-        return new UserVM(loggedInUser);
+    LoginVM handleLogin(@CurrentUser User loggedInUser){
+        // a token principal only carries id and username, so the profile fields come from the user cache
+        User user = userService.getByUsername(loggedInUser.getUsername());
+        return new LoginVM(user, tokenService.issue(user));
+    }
+
+    @PostMapping("/api/1.0/logout")
+    GenericResponse handleLogout(HttpServletRequest request){
+        String token = TokenAuthenticationFilter.resolveToken(request);
+        if (token != null){
+            tokenService.revoke(token);
+        }
+        return new GenericResponse("Logged out");
     }
 }
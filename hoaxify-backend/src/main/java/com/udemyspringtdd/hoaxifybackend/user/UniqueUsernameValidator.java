@@ -10,14 +10,23 @@ public class UniqueUsernameValidator implements ConstraintValidator<UniqueUserna
     @Autowired
     UserRepository userRepository;
 
+    @Autowired
+    UsernameBloomFilter usernameBloomFilter;
+
     @Override
     public boolean isValid(String value, ConstraintValidatorContext context) {
+        if (value == null) {
+            return true;
+        }
 
-        User inDB = userRepository.findByUsername(value);
-        if(inDB == null) {
+        // most signups pick a free name, which the filter answers without a query
+        if (!usernameBloomFilter.mightContain(value)) {
+            usernameBloomFilter.recordCheck(false, false);
             return true;
         }
 
-        return false;
+        boolean exists = userRepository.existsByUsername(value);
+        usernameBloomFilter.recordCheck(true, exists);
+        return !exists;
     }
 }
@@ -1,7 +1,9 @@
 package com.udemyspringtdd.hoaxifybackend.user;
 
 import com.fasterxml.jackson.annotation.JsonView;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Setter;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -11,14 +13,20 @@ import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Pattern;
 import javax.validation.constraints.Size;
 import java.util.Collection;
+import java.util.Locale;
 import java.beans.Transient;
 
 @Data
 @Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = User.USERNAME_KEY_CONSTRAINT, columnNames = "username_key"))
+@EntityListeners(UsernameBloomFilter.Listener.class)
 public class User implements UserDetails{
 
+    public static final String USERNAME_KEY_CONSTRAINT = "uk_user_username_key";
+
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "user_seq")
+    @SequenceGenerator(name = "user_seq", sequenceName = "user_seq", allocationSize = 50) // ids are handed out in blocks so inserts can be batched
     private long id;
 
     @NotNull(message = "{hoaxifybackend.constraints.username.NotNull.message}")
@@ -26,6 +34,11 @@ public class User implements UserDetails{
     @UniqueUsername
     private String username;
 
+    // the username in lower case; its unique index keeps names apart that only differ in case and serves every lookup
+    @Column(name = "username_key", nullable = false)
+    @Setter(AccessLevel.NONE)
+    private String usernameKey;
+
     @NotNull
     @Size(min = 4, max = 255)
     private String displayName;
@@ -37,6 +50,19 @@ public class User implements UserDetails{
 
     private String image;
 
+    // moves on every update; part of the ETag of the user's resource
+    @Version
+    private long version;
+
+    public void setUsername(String username) {
+        this.username = username;
+        this.usernameKey = usernameKey(username);
+    }
+
+    public static String usernameKey(String username) {
+        return username == null ? null : username.toLowerCase(Locale.ROOT);
+    }
+
     @Override
     @Transient
     public Collection<? extends GrantedAuthority> getAuthorities() {
@@ -0,0 +1,127 @@
+package com.udemyspringtdd.hoaxifybackend.user;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.udemyspringtdd.hoaxifybackend.configuration.AppConfiguration;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Users loaded by username, shared by authentication and profile lookups.
+ * Only existing users are cached; every write through {@link UserService} invalidates the entry.
+ * Concurrent misses for the same username share one load, so a hot or missing name costs one query.
+ */
+@Component
+public class UserCache {
+
+    private static final String CACHE_NAME = "users";
+
+    private final Cache<String, User> users;
+
+    // loads in progress; callers missing the same name wait for the first one's result instead of querying.
+    // An invalidation removes the name's entry, which is how its load learns that it read stale data
+    private final ConcurrentHashMap<String, CompletableFuture<User>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter coalescedLoads;
+
+    public UserCache(AppConfiguration appConfiguration, MeterRegistry meterRegistry) {
+        AppConfiguration.UserCache config = appConfiguration.getUserCache();
+        this.users = Caffeine.newBuilder()
+                .maximumSize(config.getMaxSize())
+                .expireAfterWrite(config.getExpireAfterWrite())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, users, CACHE_NAME);
+        Gauge.builder("cache.hit.ratio", users, cache -> cache.stats().hitRate())
+                .tag("cache", CACHE_NAME)
+                .register(meterRegistry);
+        this.coalescedLoads = Counter.builder("cache.loads.coalesced")
+                .tag("cache", CACHE_NAME)
+                .description("Misses answered by a load another caller already had in progress")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the cached user or loads it; a {@code null} from the loader is returned but not cached.
+     * The loader runs outside the cache's map lock: a query inside it would pin a virtual thread to its carrier.
+     * A load that raced with an invalidation of its name is returned but not cached, so it cannot bring back stale data.
+     * Callers that miss while a load of the same name is in progress get its result, or its exception.
+     */
+    public User get(String username, Function<String, User> loader) {
+        if (username == null) {
+            return loader.apply(null);
+        }
+        User cached = users.getIfPresent(username);
+        if (cached != null) {
+            return cached;
+        }
+        CompletableFuture<User> load = new CompletableFuture<>();
+        CompletableFuture<User> pending = inFlight.putIfAbsent(username, load);
+        if (pending != null) {
+            coalescedLoads.increment();
+            return await(pending);
+        }
+        try {
+            User loaded = loader.apply(username);
+            if (loaded != null) {
+                // under the entry's lock, so an invalidation either comes after the put and removes it, or before and skips it
+                inFlight.computeIfPresent(username, (key, current) -> {
+                    if (current == load) {
+                        users.put(username, loaded);
+                    }
+                    return current;
+                });
+            }
+            load.complete(loaded);
+            return loaded;
+        } catch (RuntimeException | Error e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(username, load);
+        }
+    }
+
+    // an invalidation also detaches the load in progress, so callers after a write never wait for a read from before it
+    public void invalidate(String username) {
+        inFlight.remove(username);
+        users.invalidate(username);
+    }
+
+    public void invalidateAll() {
+        inFlight.clear();
+        users.invalidateAll();
+    }
+
+    public long coalescedLoads() {
+        return (long) coalescedLoads.count();
+    }
+
+    private static User await(CompletableFuture<User> pending) {
+        try {
+            return pending.join();
+        } catch (CompletionException e) {
+            // the load failed in the other caller, rethrow what it threw
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public CacheStats stats() {
+        return users.stats();
+    }
+}
@@ -1,34 +1,61 @@
 package com.udemyspringtdd.hoaxifybackend.user;
 
 import com.udemyspringtdd.hoaxifybackend.error.ApiError;
+import com.udemyspringtdd.hoaxifybackend.error.BadRequestException;
 import com.udemyspringtdd.hoaxifybackend.shared.CurrentUser;
+import com.udemyspringtdd.hoaxifybackend.shared.CursorSlice;
 import com.udemyspringtdd.hoaxifybackend.shared.GenericResponse;
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserBatchEntryVM;
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserBatchVM;
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserImportResultVM;
 import com.udemyspringtdd.hoaxifybackend.user.vm.UserUpdateVM;
 import com.udemyspringtdd.hoaxifybackend.user.vm.UserVM;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.web.PageableDefault;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.validation.BindingResult;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @RestController
 @RequestMapping("/api/1.0")
 public class UserController {
 
+    // clients keep the response but revalidate it with If-None-Match on every poll
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
+
     UserService userService;
 
-    public UserController(UserService userService){
+    UserImportService userImportService;
+
+    UserPageCache userPageCache;
+
+    UserExportService userExportService;
+
+    public UserController(UserService userService, UserImportService userImportService, UserPageCache userPageCache,
+                          UserExportService userExportService){
         this.userService = userService;
+        this.userImportService = userImportService;
+        this.userPageCache = userPageCache;
+        this.userExportService = userExportService;
     }
 
     @PostMapping("/users")
@@ -37,15 +64,97 @@ public class UserController {
         return new GenericResponse("User Saved!");
     }
 
+    @PostMapping(value = "/users/import", consumes = "application/x-ndjson")
+    UserImportResultVM importUsers(InputStream body) throws IOException {
+        return userImportService.importUsers(body);
+    }
+
+    // an unchanged listing is answered with 304 before any query runs or anything is serialised
     @GetMapping("/users")
-    Page<UserVM> getUsers(@CurrentUser User loggedInUser, Pageable page){
-        return userService.getUsers(loggedInUser, page).map(user -> new UserVM(user));
+    ResponseEntity<?> getUsers(@CurrentUser User loggedInUser, Pageable page, WebRequest request){
+        // read before the version, so it may lag behind it but never run ahead
+        long sequence = userService.getUsersSequence();
+        String version = userService.getUsersVersion(loggedInUser);
+        MediaType format = userPageCache.negotiate(request.getHeader(HttpHeaders.ACCEPT));
+        String etag = eTag(version, format);
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().cacheControl(REVALIDATE).eTag(etag).varyBy(HttpHeaders.ACCEPT)
+                .contentType(format);
+        if (loggedInUser == null) {
+            // written to the response as they are, without going through Jackson again
+            byte[] body = userPageCache.get(sequence, version, format, page, () -> userService.getUsers(null, page));
+            return response.body(body);
+        }
+        return response.body(userService.getUsers(loggedInUser, page));
+    }
+
+    @GetMapping(value = "/users", params = "after")
+    ResponseEntity<CursorSlice<UserVM>> getUsersAfter(@CurrentUser User loggedInUser, @RequestParam String after, Pageable page,
+                                                      WebRequest request){
+        MediaType format = userPageCache.negotiate(request.getHeader(HttpHeaders.ACCEPT));
+        String etag = eTag(userService.getUsersVersion(loggedInUser), format);
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok().cacheControl(REVALIDATE).eTag(etag).varyBy(HttpHeaders.ACCEPT).contentType(format)
+                .body(userService.getUsersAfter(loggedInUser, after, page.getPageSize()));
+    }
+
+    // one round trip for a list of authors instead of one GET per user
+    @PostMapping("/users/batch")
+    List<UserBatchEntryVM> getUsersBatch(@RequestBody UserBatchVM batch){
+        return userService.getUsersBatch(batch);
+    }
+
+    // the whole directory in one response, for jobs that would otherwise page through all of it
+    @GetMapping("/export/users")
+    ResponseEntity<StreamingResponseBody> exportUsers(@RequestParam(defaultValue = "ndjson") String format){
+        ResponseEntity.BodyBuilder response;
+        StreamingResponseBody export;
+        switch (format) {
+            case "ndjson":
+                response = ResponseEntity.ok().contentType(MediaType.parseMediaType("application/x-ndjson"));
+                export = userExportService::exportNdjson;
+                break;
+            case "csv":
+                response = ResponseEntity.ok().contentType(MediaType.parseMediaType("text/csv;charset=UTF-8"))
+                        .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"users.csv\"");
+                export = userExportService::exportCsv;
+                break;
+            default:
+                throw new BadRequestException("Unknown export format " + format + ", use ndjson or csv");
+        }
+        if (!userExportService.tryStart()) {
+            throw new ExportsExhaustedException();
+        }
+        return response.body(out -> {
+            try {
+                export.writeTo(out);
+            } finally {
+                userExportService.finished();
+            }
+        });
+    }
+
+    // without q the request falls through to getUserByName, so a user called "search" stays reachable
+    @GetMapping(value = "/users/search", params = "q")
+    List<UserVM> searchUsers(@RequestParam String q, Pageable page){
+        return userService.search(q, page.getPageSize());
     }
 
     @GetMapping("/users/{username}")
-    UserVM getUserByName(@PathVariable String username){
+    ResponseEntity<UserVM> getUserByName(@PathVariable String username, WebRequest request){
+        // usually served from the user cache, so a poll that gets a 304 touches neither the database nor Jackson
         User user = userService.getByUsername(username);
-        return new UserVM(user);
+        UserVM userVM = userService.getUserVM(user);
+        MediaType format = userPageCache.negotiate(request.getHeader(HttpHeaders.ACCEPT));
+        String etag = eTag(userService.getUserVersion(user, userVM), format);
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok().cacheControl(REVALIDATE).eTag(etag).varyBy(HttpHeaders.ACCEPT).contentType(format).body(userVM);
     }
 
     @PutMapping("/users/{id:[0-9]+}")
@@ -55,6 +164,19 @@ public class UserController {
         return new UserVM(updated);
     }
 
+    // multipart variant for uploading a profile image along with the display name
+    @PutMapping(value = "/users/{id:[0-9]+}", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @PreAuthorize("#id == principal.id")
+    UserVM updateUserWithImage(@PathVariable long id, UserUpdateVM userUpdate){
+        User updated = userService.update(id, userUpdate);
+        return new UserVM(updated);
+    }
+
+    // JSON, Smile and CBOR bodies of one version differ byte for byte, so each gets its own strong ETag
+    private static String eTag(String version, MediaType format) {
+        return "\"" + version + "-" + format.getSubtype() + "\"";
+    }
+
     @ExceptionHandler({MethodArgumentNotValidException.class})
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     ApiError handleValidationException(MethodArgumentNotValidException exception, HttpServletRequest request){
@@ -70,4 +192,18 @@ public class UserController {
         apiError.setValidationErrors(validationErrors);
         return apiError;
     }
+
+    @ExceptionHandler({ExportsExhaustedException.class})
+    ResponseEntity<ApiError> handleExportsExhaustedException(ExportsExhaustedException exception, HttpServletRequest request){
+        ApiError apiError = new ApiError(503, exception.getMessage(), request.getServletPath());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "60").body(apiError);
+    }
+
+    @ExceptionHandler({DuplicateUsernameException.class})
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    ApiError handleDuplicateUsernameException(DuplicateUsernameException exception, HttpServletRequest request){
+        ApiError apiError = new ApiError(400, "validation error", request.getServletPath());
+        apiError.setValidationErrors(Map.of("username", exception.getMessage()));
+        return apiError;
+    }
 }
@@ -0,0 +1,89 @@
+package com.udemyspringtdd.hoaxifybackend.user;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.function.Supplier;
+
+/**
+ * Number of users, kept in memory so listings can fill in their page metadata without a COUNT(*) over the
+ * whole table. Every write path runs its insert through {@link #inserting}; a periodic count from the database
+ * corrects any drift, e.g. from rows changed behind the application's back.
+ */
+@Component
+public class UserCount {
+
+    private final UserRepository userRepository;
+
+    private final UserListVersion userListVersion;
+
+    private volatile long count;
+
+    // moves when an insert starts and ends, so a count from the database that raced with one is thrown away
+    private long changes;
+
+    private int pendingInserts;
+
+    public UserCount(UserRepository userRepository, UserListVersion userListVersion, MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+        this.userListVersion = userListVersion;
+        Gauge.builder("user.count", this, UserCount::get)
+                .description("Users as counted in memory for the page metadata of listings")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    @Scheduled(fixedDelayString = "#{@appConfiguration.userCount.reconcileInterval.toMillis()}",
+            initialDelayString = "#{@appConfiguration.userCount.reconcileInterval.toMillis()}")
+    public void reconcile() {
+        long changesBefore;
+        synchronized (this) {
+            // a committed insert that is not added yet would be counted twice
+            if (pendingInserts > 0) {
+                return;
+            }
+            changesBefore = changes;
+        }
+        long counted = userRepository.count();
+        synchronized (this) {
+            // a write during the count may or may not be in it, the next run settles it
+            if (changes != changesBefore || counted == count) {
+                return;
+            }
+            count = counted;
+        }
+        // listings carry the total, so the ones handed out before are stale now
+        userListVersion.increment();
+    }
+
+    /**
+     * Runs an insert of the given number of users, which commits before it returns, and adds them once it has.
+     */
+    public <T> T inserting(long users, Supplier<T> insert) {
+        synchronized (this) {
+            pendingInserts++;
+            changes++;
+        }
+        boolean inserted = false;
+        try {
+            T result = insert.get();
+            inserted = true;
+            return result;
+        } finally {
+            synchronized (this) {
+                pendingInserts--;
+                changes++;
+                if (inserted) {
+                    count += users;
+                }
+            }
+        }
+    }
+
+    public long get() {
+        return count;
+    }
+}
@@ -0,0 +1,155 @@
+package com.udemyspringtdd.hoaxifybackend.user;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.udemyspringtdd.hoaxifybackend.configuration.AppConfiguration;
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserVM;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+/**
+ * Writes every user to a stream, row by row as the database hands them out. Rows are read as UserVM
+ * projections with a fetch size, so nothing is managed by the persistence context and memory stays the same
+ * however large the table is. The first row is flushed right away, the rest whenever the buffers fill.
+ *
+ * <p>An export keeps its connection and transaction until the client has read the last row, so only a few may
+ * run at once; callers take a slot with {@link #tryStart} and give it back with {@link #finished}.
+ */
+@Service
+public class UserExportService {
+
+    private final UserRepository userRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ObjectWriter rowWriter;
+
+    private final MeterRegistry meterRegistry;
+
+    private final int maxConcurrent;
+
+    private final Semaphore slots;
+
+    public UserExportService(UserRepository userRepository, TransactionTemplate transactionTemplate, ObjectMapper objectMapper,
+                             MeterRegistry meterRegistry, AppConfiguration appConfiguration) {
+        this.userRepository = userRepository;
+        this.transactionTemplate = transactionTemplate;
+        // flushing after every row would send one packet per user
+        this.rowWriter = objectMapper.writerFor(UserVM.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.meterRegistry = meterRegistry;
+        this.maxConcurrent = appConfiguration.getUserExport().getMaxConcurrent();
+        this.slots = new Semaphore(maxConcurrent);
+        Gauge.builder("users.exports.running", this, service -> service.maxConcurrent - service.slots.availablePermits())
+                .description("Directory exports streaming right now")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Takes an export slot; false when all of them are in use.
+     */
+    public boolean tryStart() {
+        return slots.tryAcquire();
+    }
+
+    public void finished() {
+        slots.release();
+    }
+
+    public void exportNdjson(OutputStream out) throws IOException {
+        Counter exported = exportedCounter("ndjson");
+        try (JsonGenerator generator = rowWriter.getFactory().createGenerator(out)) {
+            export(users -> {
+                boolean first = true;
+                while (users.hasNext()) {
+                    rowWriter.writeValue(generator, users.next());
+                    generator.writeRaw('\n');
+                    exported.increment();
+                    if (first) {
+                        generator.flush();
+                        first = false;
+                    }
+                }
+            });
+        }
+    }
+
+    public void exportCsv(OutputStream out) throws IOException {
+        Counter exported = exportedCounter("csv");
+        try (Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+            writer.write("id,username,displayName,image\r\n");
+            writer.flush();
+            export(users -> {
+                while (users.hasNext()) {
+                    UserVM user = users.next();
+                    writer.write(Long.toString(user.getId()));
+                    writer.write(',');
+                    writer.write(csvField(user.getUsername()));
+                    writer.write(',');
+                    writer.write(csvField(user.getDisplayName()));
+                    writer.write(',');
+                    writer.write(csvField(user.getImage()));
+                    writer.write("\r\n");
+                    exported.increment();
+                }
+            });
+        }
+    }
+
+    // the stream holds a cursor open, which needs a transaction around it
+    private void export(RowConsumer consumer) throws IOException {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                try (Stream<UserVM> users = userRepository.streamAllUserVMs()) {
+                    consumer.accept(users.iterator());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            // usually the client went away; the cursor is closed either way
+            throw e.getCause();
+        }
+    }
+
+    // RFC 4180: quoted when it holds a separator, a quote or a line break, with quotes doubled
+    private static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        // display names are chosen by users; spreadsheets would run one starting like this as a formula
+        if (!value.isEmpty() && "=+-@\t\r".indexOf(value.charAt(0)) >= 0) {
+            value = "'" + value;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private Counter exportedCounter(String format) {
+        return Counter.builder("users.exported")
+                .tag("format", format)
+                .description("Users written by directory exports")
+                .register(meterRegistry);
+    }
+
+    private interface RowConsumer {
+
+        void accept(Iterator<UserVM> users) throws IOException;
+    }
+}
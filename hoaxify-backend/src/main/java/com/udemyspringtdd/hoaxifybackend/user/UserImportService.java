@@ -0,0 +1,227 @@
+package com.udemyspringtdd.hoaxifybackend.user;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.udemyspringtdd.hoaxifybackend.configuration.AppConfiguration;
+import com.udemyspringtdd.hoaxifybackend.configuration.OffloadingPasswordEncoder;
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserImportErrorVM;
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserImportResultVM;
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserImportVM;
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserVM;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Creates users from a newline delimited JSON stream. Rows are handled in batches: one query checks the
+ * usernames of the whole batch, passwords are hashed in parallel and the users are written with JDBC batch
+ * inserts. Invalid rows are reported with their line number and never abort the rest of the import.
+ *
+ * <p>A name can still be taken between the check and the insert, e.g. by a concurrent signup. The batch is then
+ * saved row by row, so only the rows whose names are taken fail.
+ */
+@Service
+public class UserImportService {
+
+    UserRepository userRepository;
+
+    OffloadingPasswordEncoder passwordEncoder;
+
+    Validator validator;
+
+    ObjectMapper objectMapper;
+
+    TransactionTemplate transactionTemplate;
+
+    EntityManager entityManager;
+
+    UserSearchIndex userSearchIndex;
+
+    UserListVersion userListVersion;
+
+    UserCount userCount;
+
+    int batchSize;
+
+    public UserImportService(UserRepository userRepository, OffloadingPasswordEncoder passwordEncoder, Validator validator,
+                             ObjectMapper objectMapper, TransactionTemplate transactionTemplate, EntityManager entityManager,
+                             UserSearchIndex userSearchIndex, UserListVersion userListVersion, UserCount userCount,
+                             AppConfiguration appConfiguration) {
+        this.userRepository = userRepository;
+        this.passwordEncoder = passwordEncoder;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = transactionTemplate;
+        this.entityManager = entityManager;
+        this.userSearchIndex = userSearchIndex;
+        this.userListVersion = userListVersion;
+        this.userCount = userCount;
+        this.batchSize = appConfiguration.getUserImport().getBatchSize();
+    }
+
+    public UserImportResultVM importUsers(InputStream ndjson) throws IOException {
+        UserImportResultVM result = new UserImportResultVM();
+        Set<String> usernamesInImport = new HashSet<>();
+        List<ImportRow> batch = new ArrayList<>(batchSize);
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(ndjson, StandardCharsets.UTF_8));
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            UserImportVM row = parse(line, lineNumber, result);
+            if (row == null) {
+                continue;
+            }
+            if (!usernamesInImport.add(User.usernameKey(row.getUsername()))) {
+                result.getErrors().add(usernameInUse(lineNumber));
+                continue;
+            }
+            batch.add(new ImportRow(lineNumber, row));
+            if (batch.size() == batchSize) {
+                importBatch(batch, result);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            importBatch(batch, result);
+        }
+        result.getErrors().sort(Comparator.comparingLong(UserImportErrorVM::getLine));
+        return result;
+    }
+
+    private UserImportVM parse(String line, long lineNumber, UserImportResultVM result) {
+        UserImportVM row;
+        try {
+            row = objectMapper.readValue(line, UserImportVM.class);
+        } catch (JsonProcessingException e) {
+            result.getErrors().add(new UserImportErrorVM(lineNumber, "malformed JSON"));
+            return null;
+        }
+        Set<ConstraintViolation<UserImportVM>> violations = validator.validate(row);
+        if (violations.isEmpty()) {
+            return row;
+        }
+        UserImportErrorVM error = new UserImportErrorVM(lineNumber, "validation error");
+        Map<String, String> validationErrors = new HashMap<>();
+        for (ConstraintViolation<UserImportVM> violation : violations) {
+            validationErrors.put(violation.getPropertyPath().toString(), violation.getMessage());
+        }
+        error.setValidationErrors(validationErrors);
+        result.getErrors().add(error);
+        return null;
+    }
+
+    private void importBatch(List<ImportRow> batch, UserImportResultVM result) {
+        List<String> usernames = batch.stream().map(row -> row.user.getUsername()).collect(Collectors.toList());
+        Set<String> existing = userRepository.findExistingUsernames(usernames);
+
+        List<ImportRow> fresh = new ArrayList<>(batch.size());
+        for (ImportRow row : batch) {
+            if (existing.contains(row.user.getUsername())) {
+                result.getErrors().add(usernameInUse(row.line));
+            } else {
+                fresh.add(row);
+            }
+        }
+
+        // hashed on the shared hashing threads; submitting waits for room, which throttles reading the stream
+        List<CompletableFuture<User>> hashed = fresh.stream()
+                .map(row -> passwordEncoder.encodeInBackground(row.user.getPassword()).thenApply(hash -> toUser(row.user, hash)))
+                .collect(Collectors.toList());
+        List<User> users = hashed.stream().map(CompletableFuture::join).collect(Collectors.toList());
+
+        try {
+            insert(users);
+            result.setImported(result.getImported() + users.size());
+        } catch (DataIntegrityViolationException e) {
+            if (!UserService.isUsernameKeyViolation(e)) {
+                batchNotSaved(fresh, result);
+                return;
+            }
+            for (int i = 0; i < fresh.size(); i++) {
+                // fresh entities: the ones of the failed batch already got ids
+                insertRow(fresh.get(i), toUser(fresh.get(i).user, users.get(i).getPassword()), result);
+            }
+        } catch (DataAccessException e) {
+            batchNotSaved(fresh, result);
+        }
+    }
+
+    private void insertRow(ImportRow row, User user, UserImportResultVM result) {
+        try {
+            insert(List.of(user));
+            result.setImported(result.getImported() + 1);
+        } catch (DataIntegrityViolationException e) {
+            result.getErrors().add(UserService.isUsernameKeyViolation(e) ? usernameInUse(row.line)
+                    : new UserImportErrorVM(row.line, "batch could not be saved"));
+        } catch (DataAccessException e) {
+            result.getErrors().add(new UserImportErrorVM(row.line, "batch could not be saved"));
+        }
+    }
+
+    private void insert(List<User> users) {
+        userCount.inserting(users.size(), () -> transactionTemplate.execute(status -> {
+            // through the repository, so a violated constraint comes back as a DataIntegrityViolationException
+            userRepository.saveAllAndFlush(users);
+            entityManager.clear();
+            return null;
+        }));
+        users.forEach(user -> userSearchIndex.put(new UserVM(user)));
+        userListVersion.increment();
+    }
+
+    private void batchNotSaved(List<ImportRow> rows, UserImportResultVM result) {
+        for (ImportRow row : rows) {
+            result.getErrors().add(new UserImportErrorVM(row.line, "batch could not be saved"));
+        }
+    }
+
+    private User toUser(UserImportVM row, String passwordHash) {
+        User user = new User();
+        user.setUsername(row.getUsername());
+        user.setDisplayName(row.getDisplayName());
+        user.setPassword(passwordHash);
+        return user;
+    }
+
+    private UserImportErrorVM usernameInUse(long lineNumber) {
+        UserImportErrorVM error = new UserImportErrorVM(lineNumber, "validation error");
+        error.setValidationErrors(Map.of("username", DuplicateUsernameException.MESSAGE));
+        return error;
+    }
+
+    private static class ImportRow {
+
+        final long line;
+
+        final UserImportVM user;
+
+        ImportRow(long line, UserImportVM user) {
+            this.line = line;
+            this.user = user;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.udemyspringtdd.hoaxifybackend.user;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Version of the user collection as a whole, moved by every write that can change a listing. The epoch
+ * keeps versions of an earlier run, or of another instance, from ever matching.
+ */
+@Component
+public class UserListVersion {
+
+    private final long epoch = System.currentTimeMillis();
+
+    private final AtomicLong version = new AtomicLong();
+
+    public void increment() {
+        version.incrementAndGet();
+    }
+
+    // only moves forward, so of two versions read in one run the higher one is the newer
+    public long sequence() {
+        return version.get();
+    }
+
+    public String current() {
+        return Long.toString(epoch, 36) + "-" + version.get();
+    }
+}
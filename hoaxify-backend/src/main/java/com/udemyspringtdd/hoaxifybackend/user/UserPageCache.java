@@ -0,0 +1,144 @@
+package com.udemyspringtdd.hoaxifybackend.user;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.udemyspringtdd.hoaxifybackend.configuration.AppConfiguration;
+import com.udemyspringtdd.hoaxifybackend.configuration.BinaryFormatConfiguration;
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserVM;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Anonymous listing pages as the bytes of the response, bounded by their total size. Everyone gets the
+ * same anonymous pages, so a hit skips the queries, the mapping and Jackson. Pages are kept per format,
+ * JSON or one of the binary ones callers may ask for.
+ *
+ * <p>Pages are keyed by the listing version as well, so a page serialised while a write happened can never be
+ * served for the newer version. The first lookup for a new version drops all older pages at once; the version
+ * only moves forward, so a request that read it before a write neither takes the cache back nor stores its page.
+ */
+@Component
+public class UserPageCache {
+
+    private static final String CACHE_NAME = "userPages";
+
+    private final Cache<String, byte[]> pages;
+
+    // in order of preference, for callers that accept several with the same quality
+    private final Map<MediaType, ObjectMapper> formats = new LinkedHashMap<>();
+
+    private final Timer serialization;
+
+    // sequence of the newest listing version seen, the pages of older ones are gone
+    private final AtomicLong sequence = new AtomicLong(-1);
+
+    public UserPageCache(AppConfiguration appConfiguration, ObjectMapper objectMapper,
+                         ObjectProvider<Jackson2ObjectMapperBuilder> objectMapperBuilders, MeterRegistry meterRegistry) {
+        this.pages = Caffeine.newBuilder()
+                .maximumWeight(appConfiguration.getUserPageCache().getMaxSize().toBytes())
+                .weigher((String key, byte[] page) -> key.length() * 2 + page.length)
+                .recordStats()
+                .build();
+        this.formats.put(MediaType.APPLICATION_JSON, objectMapper);
+        this.formats.put(BinaryFormatConfiguration.APPLICATION_SMILE, objectMapperBuilders.getObject().factory(new SmileFactory()).build());
+        this.formats.put(MediaType.APPLICATION_CBOR, objectMapperBuilders.getObject().factory(new CBORFactory()).build());
+        // same meter the message converter writes to, so cache misses still show up as serialisation time
+        this.serialization = Timer.builder("json.write").tag("type", "PageImpl").register(meterRegistry);
+        CaffeineCacheMetrics.monitor(meterRegistry, pages, CACHE_NAME);
+    }
+
+    /**
+     * The format a page is written in for the given Accept header; JSON when nothing in it matches or it cannot be parsed.
+     */
+    public MediaType negotiate(String accept) {
+        List<MediaType> accepted;
+        try {
+            accepted = new ArrayList<>(MediaType.parseMediaTypes(accept));
+        } catch (InvalidMediaTypeException e) {
+            return MediaType.APPLICATION_JSON;
+        }
+        MediaType.sortBySpecificityAndQuality(accepted);
+        for (MediaType mediaType : accepted) {
+            for (MediaType format : formats.keySet()) {
+                if (mediaType.includes(format)) {
+                    return format;
+                }
+            }
+        }
+        return MediaType.APPLICATION_JSON;
+    }
+
+    /**
+     * Returns the serialised page or loads and serialises it; {@code sequence} orders the listing versions.
+     * Loading runs outside the cache's map lock and is not shared: concurrent misses of one page each load it,
+     * and as the key holds the version they store the same bytes. A page of a version the cache has moved past
+     * is loaded and returned but not stored.
+     */
+    public byte[] get(long sequence, String listVersion, MediaType format, Pageable pageable, Supplier<Page<UserVM>> loader) {
+        advance(sequence);
+        ObjectMapper objectMapper = formats.get(format);
+        String key = listVersion + "|" + format + "|" + pageable.getPageNumber() + "|" + pageable.getPageSize() + "|" + pageable.getSort();
+        byte[] cached = pages.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        Page<UserVM> page = loader.get();
+        // only JSON is timed, like the converters, whose json.write meter this is
+        Supplier<byte[]> serialize = () -> {
+            try {
+                return objectMapper.writeValueAsBytes(page);
+            } catch (JsonProcessingException e) {
+                throw new HttpMessageNotWritableException("Could not write " + format + ": " + e.getOriginalMessage(), e);
+            }
+        };
+        byte[] serialized = MediaType.APPLICATION_JSON.equals(format) ? serialization.record(serialize) : serialize.get();
+        if (this.sequence.get() <= sequence) {
+            pages.put(key, serialized);
+            if (this.sequence.get() > sequence) {
+                // a newer version came in meanwhile and may have cleared the pages before this one was put
+                pages.invalidate(key);
+            }
+        }
+        return serialized;
+    }
+
+    private void advance(long sequence) {
+        long current = this.sequence.get();
+        while (current < sequence) {
+            if (this.sequence.compareAndSet(current, sequence)) {
+                pages.invalidateAll();
+                return;
+            }
+            current = this.sequence.get();
+        }
+    }
+
+    public void invalidateAll() {
+        pages.invalidateAll();
+    }
+
+    public CacheStats stats() {
+        return pages.stats();
+    }
+}
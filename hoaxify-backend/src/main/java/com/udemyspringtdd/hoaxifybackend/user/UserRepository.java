@@ -1,14 +1,87 @@
 package com.udemyspringtdd.hoaxifybackend.user;
 
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserVM;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
 
-    User findByUsername (String username);
+    User findByUsernameKey(String usernameKey);
+
+    boolean existsByUsernameKey(String usernameKey);
+
+    // the unique index on the key finds the row; the name itself still has to match exactly
+    default User findByUsername(String username) {
+        User user = findByUsernameKey(User.usernameKey(username));
+        return user != null && user.getUsername().equals(username) ? user : null;
+    }
+
+    // a name is taken when any user has it in any case
+    default boolean existsByUsername(String username) {
+        return existsByUsernameKey(User.usernameKey(username));
+    }
+
+    // read in chunks instead of materializing every username; callers must consume it inside a transaction
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    @Query("select u.username from User u")
+    Stream<String> streamAllUsernames();
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    @Query("select new com.udemyspringtdd.hoaxifybackend.user.vm.UserVM(u.id, u.username, u.displayName, u.image) from User u")
+    Stream<UserVM> streamAllUserVMs();
 
     Page<User> findByUsernameNot(String username, Pageable pageable);
+
+    // only the page itself is read; the total comes from UserCount instead of a count query
+    @Query("select new com.udemyspringtdd.hoaxifybackend.user.vm.UserVM(u.id, u.username, u.displayName, u.image) from User u")
+    List<UserVM> findAllUserVMs(Pageable pageable);
+
+    @Query("select new com.udemyspringtdd.hoaxifybackend.user.vm.UserVM(u.id, u.username, u.displayName, u.image) from User u where u.username <> :username")
+    List<UserVM> findUserVMsByUsernameNot(@Param("username") String username, Pageable pageable);
+
+    @Query("select new com.udemyspringtdd.hoaxifybackend.user.vm.UserVM(u.id, u.username, u.displayName, u.image) from User u where u.id > :id")
+    Slice<UserVM> findUserVMsByIdGreaterThan(@Param("id") long id, Pageable pageable);
+
+    @Query("select new com.udemyspringtdd.hoaxifybackend.user.vm.UserVM(u.id, u.username, u.displayName, u.image) from User u where u.id > :id and u.username <> :username")
+    Slice<UserVM> findUserVMsByIdGreaterThanAndUsernameNot(@Param("id") long id, @Param("username") String username, Pageable pageable);
+
+    @Query("select new com.udemyspringtdd.hoaxifybackend.user.vm.UserVM(u.id, u.username, u.displayName, u.image) from User u where u.id in :ids")
+    List<UserVM> findUserVMsByIdIn(@Param("ids") Collection<Long> ids);
+
+    // callers still have to match the usernames exactly, the keys ignore case
+    @Query("select new com.udemyspringtdd.hoaxifybackend.user.vm.UserVM(u.id, u.username, u.displayName, u.image) from User u where u.usernameKey in :usernameKeys")
+    List<UserVM> findUserVMsByUsernameKeyIn(@Param("usernameKeys") Collection<String> usernameKeys);
+
+    // only replaces the hash it was given, so a password changed in the meantime is kept
+    @Modifying
+    @Transactional
+    @Query("update User u set u.password = :newPassword where u.usernameKey = :usernameKey and u.password = :oldPassword")
+    int replacePassword(@Param("usernameKey") String usernameKey, @Param("oldPassword") String oldPassword, @Param("newPassword") String newPassword);
+
+    @Query("select u.usernameKey from User u where u.usernameKey in :usernameKeys")
+    Set<String> findExistingUsernameKeys(@Param("usernameKeys") Collection<String> usernameKeys);
+
+    // the given usernames that are taken, in any case
+    default Set<String> findExistingUsernames(Collection<String> usernames) {
+        Set<String> taken = findExistingUsernameKeys(usernames.stream().map(User::usernameKey).collect(Collectors.toSet()));
+        return usernames.stream().filter(username -> taken.contains(User.usernameKey(username))).collect(Collectors.toSet());
+    }
 }
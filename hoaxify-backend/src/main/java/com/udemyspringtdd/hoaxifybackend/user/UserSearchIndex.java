@@ -0,0 +1,480 @@
+package com.udemyspringtdd.hoaxifybackend.user;
+
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserVM;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * In-memory prefix index over usernames and display names for the typeahead search.
+ *
+ * <p>Every user takes one slot: its id, and its username and display name both as written and normalised
+ * (accents stripped, lower case), all as UTF-8 in one shared byte array. The index itself is a sorted
+ * {@code int[]} of key references ({@code slot << 1 | field}), so a search is a binary search followed by
+ * a scan, without any per-user objects. Writes go to a small sorted delta that is merged into the main
+ * array once it fills up. A changed user gets a new slot; the old one is skipped by searches and dropped
+ * at the next merge, and the byte array is compacted once dead slots dominate.
+ *
+ * <p>Filled from a streamed scan at startup and kept current by every write path afterwards.
+ */
+@Component
+public class UserSearchIndex {
+
+    private static final int DELTA_CAPACITY = 4096;
+
+    private static final int USERNAME = 0;
+
+    private static final int DISPLAY_NAME = 1;
+
+    private static final int NORMALIZED_USERNAME = 2;
+
+    private static final int NORMALIZED_DISPLAY_NAME = 3;
+
+    // start of each of the four strings of a slot, plus the end of the last one
+    private static final int OFFSETS_PER_SLOT = 5;
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    private final UserRepository userRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private long[] slotIds;
+
+    private int[] slotOffsets;
+
+    private String[] slotImages;
+
+    private int slotCount;
+
+    private int deadSlots;
+
+    private byte[] strings;
+
+    private int stringsLength;
+
+    private LongIntMap slotsById;
+
+    private int[] keys;
+
+    private int keyCount;
+
+    private int[] delta;
+
+    private int deltaCount;
+
+    public UserSearchIndex(UserRepository userRepository, TransactionTemplate transactionTemplate, MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+        this.transactionTemplate = transactionTemplate;
+        reset(1024);
+        Gauge.builder("user.search.index.users", this, index -> index.slotCount - index.deadSlots)
+                .description("Users in the search index")
+                .register(meterRegistry);
+        Gauge.builder("user.search.index.memory", this, UserSearchIndex::memoryBytes)
+                .baseUnit("bytes")
+                .description("Memory held by the arrays of the search index")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            reset(1024);
+            transactionTemplate.executeWithoutResult(status -> {
+                try (Stream<UserVM> users = userRepository.streamAllUserVMs()) {
+                    users.forEach(this::appendSlot);
+                }
+            });
+            keys = new int[slotCount * 2];
+            for (int slot = 0; slot < slotCount; slot++) {
+                keys[slot * 2] = slot << 1;
+                keys[slot * 2 + 1] = slot << 1 | 1;
+            }
+            keyCount = keys.length;
+            sortKeys(keys, keyCount);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a new user or replaces what is indexed for an existing one.
+     */
+    public void put(UserVM user) {
+        lock.writeLock().lock();
+        try {
+            int previous = slotsById.get(user.getId());
+            if (previous >= 0 && sameContent(previous, user)) {
+                return;
+            }
+            // merging may compact and renumber slots, so it has to happen before the new slot is taken
+            if (deltaCount + 2 > DELTA_CAPACITY) {
+                mergeDelta();
+            }
+            int slot = appendSlot(user);
+            if (previous >= 0) {
+                deadSlots++;
+            }
+            insertIntoDelta(slot << 1);
+            insertIntoDelta(slot << 1 | 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Up to {@code limit} users whose username or display name starts with {@code query}, ignoring case and
+     * accents, in the order of the matching name.
+     */
+    public List<UserVM> search(String query, int limit) {
+        byte[] prefix = normalize(query).getBytes(StandardCharsets.UTF_8);
+        if (prefix.length == 0 || limit <= 0) {
+            return List.of();
+        }
+        List<UserVM> result = new ArrayList<>(Math.min(limit, 16));
+        lock.readLock().lock();
+        try {
+            int k = lowerBound(keys, keyCount, prefix);
+            int d = lowerBound(delta, deltaCount, prefix);
+            while (result.size() < limit) {
+                boolean keyMatches = k < keyCount && startsWith(keys[k], prefix);
+                boolean deltaMatches = d < deltaCount && startsWith(delta[d], prefix);
+                int key;
+                if (keyMatches && (!deltaMatches || compareKeys(keys[k], delta[d]) <= 0)) {
+                    key = keys[k++];
+                } else if (deltaMatches) {
+                    key = delta[d++];
+                } else {
+                    break;
+                }
+                int slot = key >>> 1;
+                if (isLive(slot) && !containsUser(result, slotIds[slot])) {
+                    result.add(toUserVM(slot));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    static String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(value.trim(), Normalizer.Form.NFKD);
+        return COMBINING_MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    private void reset(int slotCapacity) {
+        slotIds = new long[slotCapacity];
+        slotOffsets = new int[slotCapacity * OFFSETS_PER_SLOT];
+        slotImages = new String[slotCapacity];
+        slotCount = 0;
+        deadSlots = 0;
+        strings = new byte[slotCapacity * 32];
+        stringsLength = 0;
+        slotsById = new LongIntMap(slotCapacity);
+        keys = new int[0];
+        keyCount = 0;
+        delta = new int[DELTA_CAPACITY];
+        deltaCount = 0;
+    }
+
+    private int appendSlot(UserVM user) {
+        if (slotCount == slotIds.length) {
+            int capacity = slotIds.length * 2;
+            slotIds = Arrays.copyOf(slotIds, capacity);
+            slotOffsets = Arrays.copyOf(slotOffsets, capacity * OFFSETS_PER_SLOT);
+            slotImages = Arrays.copyOf(slotImages, capacity);
+        }
+        int slot = slotCount++;
+        slotIds[slot] = user.getId();
+        slotImages[slot] = user.getImage();
+        int base = slot * OFFSETS_PER_SLOT;
+        slotOffsets[base + USERNAME] = appendString(nullToEmpty(user.getUsername()));
+        slotOffsets[base + DISPLAY_NAME] = appendString(nullToEmpty(user.getDisplayName()));
+        slotOffsets[base + NORMALIZED_USERNAME] = appendString(normalize(user.getUsername()));
+        slotOffsets[base + NORMALIZED_DISPLAY_NAME] = appendString(normalize(user.getDisplayName()));
+        slotOffsets[base + 4] = stringsLength;
+        slotsById.put(user.getId(), slot);
+        return slot;
+    }
+
+    private int appendString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (stringsLength + bytes.length > strings.length) {
+            strings = Arrays.copyOf(strings, Math.max(strings.length * 2, stringsLength + bytes.length));
+        }
+        int start = stringsLength;
+        System.arraycopy(bytes, 0, strings, start, bytes.length);
+        stringsLength += bytes.length;
+        return start;
+    }
+
+    private void insertIntoDelta(int key) {
+        int position = deltaCount;
+        while (position > 0 && compareKeys(delta[position - 1], key) > 0) {
+            position--;
+        }
+        System.arraycopy(delta, position, delta, position + 1, deltaCount - position);
+        delta[position] = key;
+        deltaCount++;
+    }
+
+    private void mergeDelta() {
+        if (deadSlots > (slotCount - deadSlots)) {
+            compact();
+        }
+        int[] merged = new int[keyCount + deltaCount];
+        int size = 0;
+        int k = 0;
+        int d = 0;
+        while (k < keyCount || d < deltaCount) {
+            int key;
+            if (d == deltaCount || (k < keyCount && compareKeys(keys[k], delta[d]) <= 0)) {
+                key = keys[k++];
+            } else {
+                key = delta[d++];
+            }
+            if (isLive(key >>> 1)) {
+                merged[size++] = key;
+            }
+        }
+        keys = merged;
+        keyCount = size;
+        deltaCount = 0;
+    }
+
+    // renumbers the live slots, keeping their relative order so the sorted key arrays stay sorted
+    private void compact() {
+        int[] newSlots = new int[slotCount];
+        long[] oldIds = slotIds;
+        int[] oldOffsets = slotOffsets;
+        String[] oldImages = slotImages;
+        byte[] oldStrings = strings;
+        int oldCount = slotCount;
+        int capacity = Math.max(1024, Integer.highestOneBit(Math.max(1, oldCount - deadSlots)) * 2);
+        slotIds = new long[capacity];
+        slotOffsets = new int[capacity * OFFSETS_PER_SLOT];
+        slotImages = new String[capacity];
+        strings = new byte[Math.max(1024, stringsLength)];
+        stringsLength = 0;
+        slotCount = 0;
+        LongIntMap oldSlotsById = slotsById;
+        slotsById = new LongIntMap(capacity);
+        for (int slot = 0; slot < oldCount; slot++) {
+            if (oldSlotsById.get(oldIds[slot]) != slot) {
+                newSlots[slot] = -1;
+                continue;
+            }
+            int newSlot = slotCount++;
+            newSlots[slot] = newSlot;
+            slotIds[newSlot] = oldIds[slot];
+            slotImages[newSlot] = oldImages[slot];
+            int from = oldOffsets[slot * OFFSETS_PER_SLOT];
+            int to = oldOffsets[slot * OFFSETS_PER_SLOT + 4];
+            int shift = stringsLength - from;
+            System.arraycopy(oldStrings, from, strings, stringsLength, to - from);
+            stringsLength += to - from;
+            for (int i = 0; i < OFFSETS_PER_SLOT; i++) {
+                slotOffsets[newSlot * OFFSETS_PER_SLOT + i] = oldOffsets[slot * OFFSETS_PER_SLOT + i] + shift;
+            }
+            slotsById.put(oldIds[slot], newSlot);
+        }
+        deadSlots = 0;
+        keyCount = remapKeys(keys, keyCount, newSlots);
+        deltaCount = remapKeys(delta, deltaCount, newSlots);
+    }
+
+    private static int remapKeys(int[] keys, int count, int[] newSlots) {
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            int newSlot = newSlots[keys[i] >>> 1];
+            if (newSlot >= 0) {
+                keys[size++] = newSlot << 1 | (keys[i] & 1);
+            }
+        }
+        return size;
+    }
+
+    private boolean isLive(int slot) {
+        return slotsById.get(slotIds[slot]) == slot;
+    }
+
+    private boolean sameContent(int slot, UserVM user) {
+        return decode(slot, USERNAME).equals(nullToEmpty(user.getUsername()))
+                && decode(slot, DISPLAY_NAME).equals(nullToEmpty(user.getDisplayName()))
+                && java.util.Objects.equals(slotImages[slot], user.getImage());
+    }
+
+    private UserVM toUserVM(int slot) {
+        return new UserVM(slotIds[slot], decode(slot, USERNAME), decode(slot, DISPLAY_NAME), slotImages[slot]);
+    }
+
+    private String decode(int slot, int field) {
+        int from = slotOffsets[slot * OFFSETS_PER_SLOT + field];
+        int to = slotOffsets[slot * OFFSETS_PER_SLOT + field + 1];
+        return new String(strings, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    private int keyFrom(int key) {
+        return slotOffsets[(key >>> 1) * OFFSETS_PER_SLOT + NORMALIZED_USERNAME + (key & 1)];
+    }
+
+    private int keyTo(int key) {
+        return slotOffsets[(key >>> 1) * OFFSETS_PER_SLOT + NORMALIZED_USERNAME + (key & 1) + 1];
+    }
+
+    private int compareKeys(int a, int b) {
+        int compared = Arrays.compareUnsigned(strings, keyFrom(a), keyTo(a), strings, keyFrom(b), keyTo(b));
+        return compared != 0 ? compared : Integer.compare(a, b);
+    }
+
+    private boolean startsWith(int key, byte[] prefix) {
+        int from = keyFrom(key);
+        return keyTo(key) - from >= prefix.length && Arrays.equals(strings, from, from + prefix.length, prefix, 0, prefix.length);
+    }
+
+    private int lowerBound(int[] sorted, int count, byte[] prefix) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int key = sorted[middle];
+            if (Arrays.compareUnsigned(strings, keyFrom(key), keyTo(key), prefix, 0, prefix.length) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // merge sort on primitives, so building the index for millions of users does not box every key
+    private void sortKeys(int[] array, int count) {
+        int[] buffer = new int[count];
+        for (int width = 1; width < count; width *= 2) {
+            for (int from = 0; from < count; from += 2 * width) {
+                int middle = Math.min(from + width, count);
+                int to = Math.min(from + 2 * width, count);
+                int left = from;
+                int right = middle;
+                int out = from;
+                while (left < middle && right < to) {
+                    buffer[out++] = compareKeys(array[left], array[right]) <= 0 ? array[left++] : array[right++];
+                }
+                while (left < middle) {
+                    buffer[out++] = array[left++];
+                }
+                while (right < to) {
+                    buffer[out++] = array[right++];
+                }
+            }
+            System.arraycopy(buffer, 0, array, 0, count);
+        }
+    }
+
+    private double memoryBytes() {
+        return strings.length + slotIds.length * 8.0 + slotOffsets.length * 4.0 + slotImages.length * 4.0
+                + keys.length * 4.0 + delta.length * 4.0 + slotsById.memoryBytes();
+    }
+
+    private static boolean containsUser(List<UserVM> users, long id) {
+        for (UserVM user : users) {
+            if (user.getId() == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    /**
+     * Open addressing map from user id to slot, two primitive arrays instead of a boxed entry per user.
+     */
+    private static final class LongIntMap {
+
+        private long[] ids;
+
+        private int[] slots;
+
+        private int size;
+
+        LongIntMap(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(16, expected * 2) - 1) << 1;
+            ids = new long[capacity];
+            slots = new int[capacity];
+            Arrays.fill(slots, -1);
+        }
+
+        int get(long id) {
+            int mask = ids.length - 1;
+            for (int i = index(id, mask); slots[i] >= 0; i = (i + 1) & mask) {
+                if (ids[i] == id) {
+                    return slots[i];
+                }
+            }
+            return -1;
+        }
+
+        void put(long id, int slot) {
+            if ((size + 1) * 2 > ids.length) {
+                grow();
+            }
+            int mask = ids.length - 1;
+            int i = index(id, mask);
+            while (slots[i] >= 0) {
+                if (ids[i] == id) {
+                    slots[i] = slot;
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            ids[i] = id;
+            slots[i] = slot;
+            size++;
+        }
+
+        double memoryBytes() {
+            return ids.length * 12.0;
+        }
+
+        private void grow() {
+            long[] oldIds = ids;
+            int[] oldSlots = slots;
+            ids = new long[oldIds.length * 2];
+            slots = new int[oldSlots.length * 2];
+            Arrays.fill(slots, -1);
+            size = 0;
+            for (int i = 0; i < oldIds.length; i++) {
+                if (oldSlots[i] >= 0) {
+                    put(oldIds[i], oldSlots[i]);
+                }
+            }
+        }
+
+        private static int index(long id, int mask) {
+            long hash = id * 0x9e3779b97f4a7c15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+    }
+}
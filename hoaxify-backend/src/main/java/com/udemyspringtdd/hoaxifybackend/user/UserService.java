@@ -1,12 +1,37 @@
 package com.udemyspringtdd.hoaxifybackend.user;
 
+import com.udemyspringtdd.hoaxifybackend.configuration.VerifiedCredentialCache;
+import com.udemyspringtdd.hoaxifybackend.configuration.AppConfiguration;
+import com.udemyspringtdd.hoaxifybackend.error.BadRequestException;
 import com.udemyspringtdd.hoaxifybackend.error.NotFoundException;
+import com.udemyspringtdd.hoaxifybackend.file.FileService;
+import com.udemyspringtdd.hoaxifybackend.file.ThumbnailService;
+import com.udemyspringtdd.hoaxifybackend.shared.CursorSlice;
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserBatchEntryVM;
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserBatchVM;
 import com.udemyspringtdd.hoaxifybackend.user.vm.UserUpdateVM;
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserVM;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.support.PageableExecutionUtils;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 public class UserService {
@@ -15,26 +40,183 @@ public class UserService {
 
     PasswordEncoder passwordEncoder;
 
-    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+    VerifiedCredentialCache verifiedCredentialCache;
+
+    UserCache userCache;
+
+    UserSearchIndex userSearchIndex;
+
+    FileService fileService;
+
+    ThumbnailService thumbnailService;
+
+    UserListVersion userListVersion;
+
+    UserCount userCount;
+
+    int batchMaxSize;
+
+    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder, VerifiedCredentialCache verifiedCredentialCache,
+                       UserCache userCache, UserSearchIndex userSearchIndex, FileService fileService,
+                       ThumbnailService thumbnailService, UserListVersion userListVersion, UserCount userCount,
+                       AppConfiguration appConfiguration) {
         super();
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.verifiedCredentialCache = verifiedCredentialCache;
+        this.userCache = userCache;
+        this.userSearchIndex = userSearchIndex;
+        this.fileService = fileService;
+        this.thumbnailService = thumbnailService;
+        this.userListVersion = userListVersion;
+        this.userCount = userCount;
+        this.batchMaxSize = appConfiguration.getUserBatch().getMaxSize();
     }
 
     public User save(User user){
         user.setPassword(passwordEncoder.encode(user.getPassword()));
-        return userRepository.save(user);
+        User saved;
+        try {
+            saved = userCount.inserting(1, () -> userRepository.save(user));
+        } catch (DataIntegrityViolationException e) {
+            // the validator saw the name free, a concurrent signup took it before the insert
+            if (isUsernameKeyViolation(e)) {
+                throw new DuplicateUsernameException(e);
+            }
+            throw e;
+        }
+        userCache.invalidate(saved.getUsername());
+        userSearchIndex.put(new UserVM(saved));
+        userListVersion.increment();
+        return saved;
     }
 
-    public Page<User> getUsers(User loggedInUser, Pageable pageable) {
+    // listings read UserVM projections: no password column, no managed entities to dirty-check
+    @Transactional(readOnly = true)
+    public Page<UserVM> getUsers(User loggedInUser, Pageable pageable) {
+        List<UserVM> content;
+        long total;
         if (loggedInUser != null){
-            return userRepository.findByUsernameNot(loggedInUser.getUsername(), pageable);
+            content = userRepository.findUserVMsByUsernameNot(loggedInUser.getUsername(), pageable);
+            total = Math.max(0, userCount.get() - 1);
+        } else {
+            content = userRepository.findAllUserVMs(pageable);
+            total = userCount.get();
         }
-        return userRepository.findAll(pageable);
+        useListImages(content);
+        // a short last page gives the exact total by itself
+        return PageableExecutionUtils.getPage(content, pageable, () -> total);
+    }
+
+    /**
+     * Keyset scroll ordered by id: each slice is a {@code WHERE id > ? ORDER BY id LIMIT n} query,
+     * so it costs the same no matter how deep the client is, and there is no count query.
+     */
+    @Transactional(readOnly = true)
+    public CursorSlice<UserVM> getUsersAfter(User loggedInUser, String cursor, int size) {
+        long afterId = CursorSlice.decodeCursor(cursor);
+        Pageable pageable = PageRequest.of(0, size, Sort.by("id"));
+        Slice<UserVM> slice;
+        if (loggedInUser != null){
+            slice = userRepository.findUserVMsByIdGreaterThanAndUsernameNot(afterId, loggedInUser.getUsername(), pageable);
+        } else {
+            slice = userRepository.findUserVMsByIdGreaterThan(afterId, pageable);
+        }
+        List<UserVM> content = slice.getContent();
+        useListImages(content);
+        String next = slice.hasNext() ? CursorSlice.encodeCursor(content.get(content.size() - 1).getId()) : null;
+        return new CursorSlice<>(content, size, next);
+    }
+
+    // answered from memory, the database is not involved
+    public List<UserVM> search(String query, int size) {
+        List<UserVM> users = userSearchIndex.search(query, size);
+        useListImages(users);
+        return users;
+    }
+
+    /**
+     * Resolves a batch with one IN query per kind of key. The entries follow the request, ids first, and keys
+     * without a user are answered inline instead of failing the batch.
+     */
+    @Transactional(readOnly = true)
+    public List<UserBatchEntryVM> getUsersBatch(UserBatchVM batch) {
+        List<Long> ids = batch.getIds() == null ? List.of() : batch.getIds();
+        List<String> usernames = batch.getUsernames() == null ? List.of() : batch.getUsernames();
+        if (ids.size() + usernames.size() > batchMaxSize) {
+            throw new BadRequestException("A batch may ask for at most " + batchMaxSize + " users");
+        }
+        if (ids.contains(null) || usernames.contains(null)) {
+            throw new BadRequestException("A batch may not ask for null");
+        }
+        Map<Long, UserVM> byId = new HashMap<>();
+        if (!ids.isEmpty()) {
+            userRepository.findUserVMsByIdIn(new HashSet<>(ids)).forEach(user -> byId.put(user.getId(), user));
+        }
+        Map<String, UserVM> byUsername = new HashMap<>();
+        if (!usernames.isEmpty()) {
+            Set<String> keys = usernames.stream().map(User::usernameKey).collect(Collectors.toSet());
+            userRepository.findUserVMsByUsernameKeyIn(keys).forEach(user -> byUsername.put(user.getUsername(), user));
+        }
+        useListImages(new ArrayList<>(byId.values()));
+        useListImages(new ArrayList<>(byUsername.values()));
+
+        List<UserBatchEntryVM> entries = new ArrayList<>(ids.size() + usernames.size());
+        ids.forEach(id -> entries.add(entry(id, byId.get(id))));
+        usernames.forEach(username -> entries.add(entry(username, byUsername.get(username))));
+        return entries;
+    }
+
+    private static UserBatchEntryVM entry(Object key, UserVM user) {
+        return new UserBatchEntryVM(key, user != null, user);
+    }
+
+    public UserVM getUserVM(User user) {
+        UserVM userVM = new UserVM(user);
+        userVM.setImage(thumbnailService.profileImage(user.getImage()));
+        return userVM;
+    }
+
+    /**
+     * Version of the listings, built from counters only so checking it costs no query. It changes with every
+     * write and every new thumbnail, and differs per logged in user since they are left out of the listings.
+     */
+    public String getUsersVersion(User loggedInUser) {
+        long viewer = loggedInUser == null ? 0 : loggedInUser.getId();
+        return userListVersion.current() + "-" + thumbnailService.generation() + "-" + viewer;
+    }
+
+    /**
+     * Counts the changes to the anonymous listings: it grows whenever {@link #getUsersVersion} changes for them.
+     */
+    public long getUsersSequence() {
+        return userListVersion.sequence() + thumbnailService.generation();
+    }
+
+    public String getUserVersion(User user, UserVM userVM) {
+        // the view also changes, without a new version, once the thumbnail is there
+        String variant = Objects.equals(userVM.getImage(), user.getImage()) ? "" : "-t";
+        return user.getId() + "-" + user.getVersion() + variant;
+    }
+
+    static boolean isUsernameKeyViolation(DataIntegrityViolationException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException) {
+                String constraint = ((ConstraintViolationException) cause).getConstraintName();
+                // some databases report the name with the index and the values around it
+                return constraint != null && constraint.toLowerCase(Locale.ROOT).contains(User.USERNAME_KEY_CONSTRAINT);
+            }
+        }
+        return false;
+    }
+
+    // the projections are fresh objects, not managed entities, so they can be changed in place
+    private void useListImages(List<UserVM> users) {
+        users.forEach(user -> user.setImage(thumbnailService.listImage(user.getImage())));
     }
 
     public User getByUsername(String username) {
-        User inDB = userRepository.findByUsername(username);
+        User inDB = userCache.get(username, userRepository::findByUsername);
         if (inDB == null){
             throw new NotFoundException(username + " not found");
         }
@@ -44,6 +226,15 @@ public class UserService {
     public User update(long id, UserUpdateVM userUpdateVM) {
         User inDB = userRepository.getOne(id);
         inDB.setDisplayName(userUpdateVM.getDisplayName());
-        return userRepository.save(inDB);
+        if (userUpdateVM.getImage() != null && !userUpdateVM.getImage().isEmpty()) {
+            inDB.setImage(fileService.saveProfileImage(userUpdateVM.getImage()));
+            thumbnailService.submit(inDB.getImage());
+        }
+        User updated = userRepository.save(inDB);
+        verifiedCredentialCache.invalidate(updated.getUsername());
+        userCache.invalidate(updated.getUsername());
+        userSearchIndex.put(new UserVM(updated));
+        userListVersion.increment();
+        return updated;
     }
 }
@@ -0,0 +1,251 @@
+package com.udemyspringtdd.hoaxifybackend.user;
+
+import com.udemyspringtdd.hoaxifybackend.configuration.AppConfiguration;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.PostPersist;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * In-memory Bloom filter of every username in the database. {@link #mightContain} never answers {@code false}
+ * for a taken username, so a negative lets the unique username check skip the database; a positive may be
+ * wrong at the configured rate and has to be confirmed with a query.
+ *
+ * <p>The filter is filled from a streamed scan of the user table at startup and by {@link Listener} for every
+ * user persisted afterwards, whichever code path saved it. Usernames are never removed, so a deleted user only
+ * costs an extra query.
+ */
+@Component
+public class UsernameBloomFilter {
+
+    private final UserRepository userRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final int hashFunctions;
+
+    private final long bitCount;
+
+    private final double expectedFalsePositiveRate;
+
+    private volatile AtomicLongArray bits;
+
+    // the array a running rebuild fills; puts go to it as well so none is lost when it replaces bits
+    private AtomicLongArray rebuilding;
+
+    private final ReadWriteLock swap = new ReentrantReadWriteLock();
+
+    private final AtomicLong insertions = new AtomicLong();
+
+    private final Counter negatives;
+
+    private final Counter confirmedPositives;
+
+    private final Counter falsePositives;
+
+    public UsernameBloomFilter(UserRepository userRepository, TransactionTemplate transactionTemplate,
+                               AppConfiguration appConfiguration, MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+        this.transactionTemplate = transactionTemplate;
+        AppConfiguration.UsernameFilter config = appConfiguration.getUsernameFilter();
+        long expectedInsertions = Math.max(1, config.getExpectedInsertions());
+        this.expectedFalsePositiveRate = config.getFalsePositiveRate();
+        // optimal sizing for n insertions at false positive rate p: m = -n ln p / (ln 2)^2 bits, k = m / n ln 2
+        long words = Math.max(1, (long) Math.ceil(-expectedInsertions * Math.log(expectedFalsePositiveRate) / (Math.log(2) * Math.log(2)) / 64));
+        if (words > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("hoaxify.username-filter is too large: " + words + " words");
+        }
+        this.bitCount = words * 64;
+        this.hashFunctions = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+        this.bits = new AtomicLongArray((int) words);
+
+        Gauge.builder("username.filter.memory", this, filter -> filter.bitCount / 8.0)
+                .baseUnit("bytes")
+                .description("Memory held by the username Bloom filter")
+                .register(meterRegistry);
+        Gauge.builder("username.filter.insertions", insertions, AtomicLong::get)
+                .description("Usernames added to the filter since it was built")
+                .register(meterRegistry);
+        Gauge.builder("username.filter.false.positive.rate", this, UsernameBloomFilter::estimatedFalsePositiveRate)
+                .tag("kind", "estimated")
+                .description("False positive rate at the current fill")
+                .register(meterRegistry);
+        Gauge.builder("username.filter.false.positive.rate", this, filter -> filter.expectedFalsePositiveRate)
+                .tag("kind", "configured")
+                .register(meterRegistry);
+        this.negatives = checks(meterRegistry, "negative");
+        this.confirmedPositives = checks(meterRegistry, "positive");
+        this.falsePositives = checks(meterRegistry, "false_positive");
+    }
+
+    /**
+     * Replaces the filter with one scanned from the table. Usernames put while the scan runs end up in both.
+     */
+    @PostConstruct
+    public synchronized void rebuild() {
+        AtomicLongArray rebuilt = new AtomicLongArray(bits.length());
+        AtomicLong count = new AtomicLong();
+        replace(null, rebuilt);
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                try (Stream<String> usernames = userRepository.streamAllUsernames()) {
+                    usernames.forEach(username -> {
+                        put(rebuilt, username);
+                        count.incrementAndGet();
+                    });
+                }
+            });
+        } catch (RuntimeException e) {
+            // the old filter stays, it is missing nothing
+            replace(null, null);
+            throw e;
+        }
+        replace(rebuilt, null);
+        insertions.set(count.get());
+    }
+
+    public void put(String username) {
+        swap.readLock().lock();
+        try {
+            put(bits, username);
+            if (rebuilding != null) {
+                put(rebuilding, username);
+            }
+        } finally {
+            swap.readLock().unlock();
+        }
+        insertions.incrementAndGet();
+    }
+
+    public boolean mightContain(String username) {
+        AtomicLongArray current = bits;
+        long h1 = hash(username);
+        long h2 = mix(h1 ^ 0x9e3779b97f4a7c15L);
+        for (int i = 1; i <= hashFunctions; i++) {
+            long bit = index(h1 + i * h2);
+            if ((current.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records how a check ended, so the false positive rate seen in production can be compared with the configured one.
+     */
+    void recordCheck(boolean mightContain, boolean exists) {
+        if (!mightContain) {
+            negatives.increment();
+        } else if (exists) {
+            confirmedPositives.increment();
+        } else {
+            falsePositives.increment();
+        }
+    }
+
+    // excludes puts, so each of them lands in every array it has to
+    private void replace(AtomicLongArray newBits, AtomicLongArray newRebuilding) {
+        swap.writeLock().lock();
+        try {
+            if (newBits != null) {
+                bits = newBits;
+            }
+            rebuilding = newRebuilding;
+        } finally {
+            swap.writeLock().unlock();
+        }
+    }
+
+    private void put(AtomicLongArray target, String username) {
+        long h1 = hash(username);
+        long h2 = mix(h1 ^ 0x9e3779b97f4a7c15L);
+        for (int i = 1; i <= hashFunctions; i++) {
+            long bit = index(h1 + i * h2);
+            long mask = 1L << bit;
+            target.getAndAccumulate((int) (bit >>> 6), mask, (word, m) -> word | m);
+        }
+    }
+
+    private long index(long combinedHash) {
+        return (combinedHash & Long.MAX_VALUE) % bitCount;
+    }
+
+    private double estimatedFalsePositiveRate() {
+        AtomicLongArray current = bits;
+        long set = 0;
+        for (int i = 0; i < current.length(); i++) {
+            set += Long.bitCount(current.get(i));
+        }
+        return Math.pow((double) set / bitCount, hashFunctions);
+    }
+
+    private static Counter checks(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("username.filter.checks")
+                .tag("result", result)
+                .description("Unique username checks by outcome of the Bloom filter")
+                .register(meterRegistry);
+    }
+
+    // 64-bit FNV-1a with the MurmurHash3 finalizer; the k probes are h1 + i * h2 (Kirsch-Mitzenmacher)
+    // names that only differ in case are the same name, so the key is hashed
+    private static long hash(String username) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : User.usernameKey(username).getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Puts the name of every persisted user into the filter once the insert is committed, so users saved
+     * directly through the repository are known as well. Hibernate creates it through Spring's bean container.
+     */
+    public static class Listener {
+
+        // looked up on use: the filter needs the repositories, which are built with this listener
+        private final ObjectProvider<UsernameBloomFilter> usernameBloomFilter;
+
+        public Listener(ObjectProvider<UsernameBloomFilter> usernameBloomFilter) {
+            this.usernameBloomFilter = usernameBloomFilter;
+        }
+
+        @PostPersist
+        void persisted(User user) {
+            String username = user.getUsername();
+            if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+                usernameBloomFilter.getObject().put(username);
+                return;
+            }
+            // a rebuild that starts before the commit cannot see the row yet, but it does see this put
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    usernameBloomFilter.getObject().put(username);
+                }
+            });
+        }
+    }
+}
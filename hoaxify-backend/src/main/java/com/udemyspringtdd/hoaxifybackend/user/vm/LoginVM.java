@@ -0,0 +1,19 @@
+package com.udemyspringtdd.hoaxifybackend.user.vm;
+
+import com.udemyspringtdd.hoaxifybackend.user.User;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+@Data
+@EqualsAndHashCode(callSuper = true)
+@NoArgsConstructor
+public class LoginVM extends UserVM {
+
+    private String token;
+
+    public LoginVM(User user, String token){
+        super(user);
+        this.token = token;
+    }
+}
@@ -0,0 +1,20 @@
+package com.udemyspringtdd.hoaxifybackend.user.vm;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(value = JsonInclude.Include.NON_NULL)
+public class UserBatchEntryVM {
+
+    // the id or username as it was requested
+    private Object key;
+
+    private boolean found;
+
+    private UserVM user;
+}
@@ -0,0 +1,14 @@
+package com.udemyspringtdd.hoaxifybackend.user.vm;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class UserBatchVM {
+
+    private List<Long> ids = new ArrayList<>();
+
+    private List<String> usernames = new ArrayList<>();
+}
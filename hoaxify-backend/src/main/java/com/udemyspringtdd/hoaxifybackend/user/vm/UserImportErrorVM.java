@@ -0,0 +1,24 @@
+package com.udemyspringtdd.hoaxifybackend.user.vm;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@JsonInclude(value = JsonInclude.Include.NON_NULL)
+public class UserImportErrorVM {
+
+    private long line;
+
+    private String message;
+
+    private Map<String, String> validationErrors;
+
+    public UserImportErrorVM(long line, String message) {
+        this.line = line;
+        this.message = message;
+    }
+}
@@ -0,0 +1,28 @@
+package com.udemyspringtdd.hoaxifybackend.user.vm;
+
+import lombok.Data;
+
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
+import javax.validation.constraints.Size;
+
+/**
+ * One row of a bulk import. Carries the same constraints as {@code User} except the unique username check,
+ * which the import runs for a whole batch in a single query.
+ */
+@Data
+public class UserImportVM {
+
+    @NotNull(message = "{hoaxifybackend.constraints.username.NotNull.message}")
+    @Size(min = 4, max = 255)
+    private String username;
+
+    @NotNull
+    @Size(min = 4, max = 255)
+    private String displayName;
+
+    @NotNull
+    @Size(min = 8, max = 255)
+    @Pattern(regexp = "^(?=.*[a-z])(?=.*[A-Z])(?=.*\\d).*$", message = "{hoaxifybackend.constraints.password.Pattern.message}")
+    private String password;
+}
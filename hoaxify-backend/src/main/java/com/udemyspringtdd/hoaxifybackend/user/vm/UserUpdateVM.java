@@ -1,9 +1,15 @@
 package com.udemyspringtdd.hoaxifybackend.user.vm;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
+import org.springframework.web.multipart.MultipartFile;
 
 @Data
 public class UserUpdateVM {
 
     private String displayName;
+
+    // only bound from multipart requests, by then the container has already spooled it to disk
+    @JsonIgnore
+    private MultipartFile image;
 }
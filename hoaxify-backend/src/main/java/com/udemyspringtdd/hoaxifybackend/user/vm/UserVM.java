@@ -1,11 +1,13 @@
 package com.udemyspringtdd.hoaxifybackend.user.vm;
 
 import com.udemyspringtdd.hoaxifybackend.user.User;
+import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Data
 @NoArgsConstructor
+@AllArgsConstructor // used by the constructor expressions in UserRepository
 public class UserVM {
 
     private long id;
@@ -0,0 +1,10 @@
+create table if not exists user (
+    id bigint auto_increment primary key,
+    username varchar(255) not null,
+    -- the username in lower case, unique like in the servlet application so names differing only in case clash
+    username_key varchar(255) not null,
+    display_name varchar(255) not null,
+    password varchar(255) not null,
+    image varchar(255),
+    constraint uk_user_username_key unique (username_key)
+);
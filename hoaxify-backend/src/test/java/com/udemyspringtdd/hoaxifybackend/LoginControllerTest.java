@@ -2,8 +2,10 @@ package com.udemyspringtdd.hoaxifybackend;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import com.udemyspringtdd.hoaxifybackend.configuration.VerifiedCredentialCache;
 import com.udemyspringtdd.hoaxifybackend.error.ApiError;
 import com.udemyspringtdd.hoaxifybackend.user.User;
+import com.udemyspringtdd.hoaxifybackend.user.UserCache;
 import com.udemyspringtdd.hoaxifybackend.user.UserRepository;
 import com.udemyspringtdd.hoaxifybackend.user.UserService;
 
@@ -14,10 +16,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.client.support.BasicAuthenticationInterceptor;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
 
@@ -30,6 +35,8 @@ public class LoginControllerTest {
 
     private static final String API_1_0_LOGIN = "/api/1.0/login";
 
+    private static final String API_1_0_LOGOUT = "/api/1.0/logout";
+
     @Autowired
     TestRestTemplate testRestTemplate;
 
@@ -39,9 +46,16 @@ public class LoginControllerTest {
     @Autowired
     UserService userService;
 
+    @Autowired
+    UserCache userCache;
+
+    @Autowired
+    VerifiedCredentialCache verifiedCredentialCache;
+
     @Before
     public void cleanup(){
         userRepository.deleteAll();
+        userCache.invalidateAll();
         testRestTemplate.getRestTemplate().getInterceptors().clear();
     }
 
@@ -135,10 +149,149 @@ public class LoginControllerTest {
         assertThat(body.containsKey("password")).isFalse();
     }
 
+    @Test
+    public void postLogin_withValidCredentialsTwice_receiveSecondLoginFromCredentialCache(){
+        userService.save(TestUtil.createValidUser());
+        authenticate();
+        login(Object.class);
+        long hitsBefore = verifiedCredentialCache.stats().hitCount();
+
+        ResponseEntity<Object> response = login(Object.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(verifiedCredentialCache.stats().hitCount()).isEqualTo(hitsBefore + 1);
+    }
+
+    @Test
+    public void postLogin_withIncorrectPasswordAfterValidLogin_receiveUnauthorized(){
+        userService.save(TestUtil.createValidUser());
+        authenticate();
+        login(Object.class);
+
+        testRestTemplate.getRestTemplate().getInterceptors().clear();
+        authenticate("test-user", "Wr0ngPassword");
+        ResponseEntity<Object> response = login(Object.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+    }
+
+    @Test
+    public void postLogin_withValidCredentials_receiveAccessToken(){
+        userService.save(TestUtil.createValidUser());
+        authenticate();
+        ResponseEntity<Map<String, Object>> response = login(new ParameterizedTypeReference<Map<String, Object>>() {});
+        assertThat(response.getBody().get("token")).isNotNull();
+    }
+
+    @Test
+    public void postLogin_withAccessToken_receiveUnauthorized(){
+        userService.save(TestUtil.createValidUser());
+        String token = obtainToken();
+
+        ResponseEntity<Object> response = postWithToken(API_1_0_LOGIN, token);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+    }
+
+    @Test
+    public void postLogout_withAccessToken_receiveOk(){
+        userService.save(TestUtil.createValidUser());
+        String token = obtainToken();
+
+        ResponseEntity<Object> response = postWithToken(API_1_0_LOGOUT, token);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    public void postLogout_withTamperedAccessToken_receiveUnauthorized(){
+        userService.save(TestUtil.createValidUser());
+        String token = obtainToken();
+        String tampered = "x" + token.substring(1);
+
+        ResponseEntity<Object> response = postWithToken(API_1_0_LOGOUT, tampered);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+    }
+
+    @Test
+    public void postLogout_withRevokedAccessToken_receiveUnauthorized(){
+        userService.save(TestUtil.createValidUser());
+        String token = obtainToken();
+        postWithToken(API_1_0_LOGOUT, token);
+
+        ResponseEntity<Object> response = postWithToken(API_1_0_LOGOUT, token);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+    }
+
+    @Test
+    public void postLogin_withHashOfLowerStrength_storesHashOfConfiguredStrength(){
+        userService.save(TestUtil.createValidUser());
+        storeHashOfStrength(4);
+        authenticate();
+
+        assertThat(login(Object.class).getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(userRepository.findByUsername("test-user").getPassword()).startsWith("$2a$10$");
+    }
+
+    @Test
+    public void postLogin_withHashOfHigherStrength_storesHashOfConfiguredStrength(){
+        userService.save(TestUtil.createValidUser());
+        storeHashOfStrength(11);
+        authenticate();
+
+        assertThat(login(Object.class).getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(userRepository.findByUsername("test-user").getPassword()).startsWith("$2a$10$");
+    }
+
+    @Test
+    public void postLogin_afterRehash_canLoginAgain(){
+        userService.save(TestUtil.createValidUser());
+        storeHashOfStrength(4);
+        authenticate();
+        login(Object.class);
+
+        assertThat(login(Object.class).getStatusCode()).isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    public void postLogin_withIncorrectCredentialsAndOutdatedHash_keepsStoredHash(){
+        userService.save(TestUtil.createValidUser());
+        String outdated = storeHashOfStrength(4);
+        authenticate("test-user", "Wr0ngPassword");
+
+        login(Object.class);
+        assertThat(userRepository.findByUsername("test-user").getPassword()).isEqualTo(outdated);
+    }
+
+    private String storeHashOfStrength(int strength) {
+        String current = userRepository.findByUsername("test-user").getPassword();
+        String outdated = new BCryptPasswordEncoder(strength).encode("P4ssword");
+        userRepository.replacePassword(User.usernameKey("test-user"), current, outdated);
+        userCache.invalidate("test-user");
+        return outdated;
+    }
+
+    private String obtainToken() {
+        authenticate();
+        ResponseEntity<Map<String, Object>> response = login(new ParameterizedTypeReference<Map<String, Object>>() {});
+        testRestTemplate.getRestTemplate().getInterceptors().clear();
+        return (String) response.getBody().get("token");
+    }
+
+    private HttpEntity<Object> bearer(String token) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setBearerAuth(token);
+        return new HttpEntity<>(headers);
+    }
+
+    private ResponseEntity<Object> postWithToken(String path, String token) {
+        return testRestTemplate.exchange(path, HttpMethod.POST, bearer(token), Object.class);
+    }
+
     private void authenticate() {
+        authenticate("test-user", "P4ssword");
+    }
+
+    private void authenticate(String username, String password) {
         testRestTemplate
                 .getRestTemplate()
-                .getInterceptors().add(new BasicAuthenticationInterceptor("test-user", "P4ssword"));
+                .getInterceptors().add(new BasicAuthenticationInterceptor(username, password));
     }
 
     public <T> ResponseEntity<T> login(Class<T> responseType){
@@ -0,0 +1,178 @@
+package com.udemyspringtdd.hoaxifybackend;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.udemyspringtdd.hoaxifybackend.configuration.PasswordHashingExecutor;
+import com.udemyspringtdd.hoaxifybackend.configuration.PasswordHashingRejectedException;
+import com.udemyspringtdd.hoaxifybackend.error.ApiError;
+import com.udemyspringtdd.hoaxifybackend.user.User;
+import com.udemyspringtdd.hoaxifybackend.user.UserCache;
+import com.udemyspringtdd.hoaxifybackend.user.UserRepository;
+import com.udemyspringtdd.hoaxifybackend.user.UserService;
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserUpdateVM;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.support.BasicAuthenticationInterceptor;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+public class PasswordHashingExecutorTest {
+
+    private static final String API_1_0_USERS = "/api/1.0/users";
+
+    @Autowired
+    TestRestTemplate testRestTemplate;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    UserService userService;
+
+    @Autowired
+    UserCache userCache;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    PasswordHashingExecutor passwordHashingExecutor;
+
+    @Before
+    public void cleanUp(){
+        userRepository.deleteAll();
+        userCache.invalidateAll();
+        testRestTemplate.getRestTemplate().getInterceptors().clear();
+    }
+
+    @Test
+    public void postUser_whenPasswordHashingIsSaturated_receiveServiceUnavailableWithRetryAfter() throws Exception {
+        List<Thread> blockers = saturatePasswordHashing();
+        try {
+            ResponseEntity<ApiError> response = postSignupRequest(TestUtil.createValidUser(), ApiError.class);
+            assertThat(response.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+            assertThat(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isNotNull();
+            assertThat(response.getBody().getStatus()).isEqualTo(503);
+        } finally {
+            release(blockers);
+        }
+    }
+
+    @Test
+    public void putUser_whenPasswordHashingIsSaturatedDuringBasicAuth_receiveServiceUnavailable() throws Exception {
+        User user = userService.save(TestUtil.createValidUser("user1"));
+        List<Thread> blockers = saturatePasswordHashing();
+        try {
+            authenticate(user.getUsername());
+            ResponseEntity<Object> response = putUser(user.getId(), new HttpEntity<>(createValidUserUpdateVM()), Object.class);
+            assertThat(response.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+            assertThat(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isNotNull();
+        } finally {
+            release(blockers);
+        }
+    }
+
+    @Test
+    public void getUserByUsername_whenPasswordHashingIsSaturated_receiveOk() throws Exception {
+        userService.save(TestUtil.createValidUser("user1"));
+        List<Thread> blockers = saturatePasswordHashing();
+        try {
+            assertThat(getUser("user1", Object.class).getStatusCode()).isEqualTo(HttpStatus.OK);
+        } finally {
+            release(blockers);
+        }
+    }
+
+    private final CountDownLatch hashingBlocked = new CountDownLatch(1);
+
+    // occupies every hashing thread, then queues blockers until one is turned away, so the next hash is too
+    private List<Thread> saturatePasswordHashing() throws InterruptedException {
+        while (executorGauge("executor.active") > 0 || executorGauge("executor.queued") > 0) {
+            Thread.sleep(10);
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        CountDownLatch running = new CountDownLatch(threads);
+        List<Thread> blockers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            blockers.add(startBlocker(running, new AtomicBoolean()));
+        }
+        running.await(10, TimeUnit.SECONDS);
+        AtomicBoolean rejected = new AtomicBoolean();
+        while (!rejected.get()) {
+            double queuedBefore = executorGauge("executor.queued");
+            blockers.add(startBlocker(running, rejected));
+            while (!rejected.get() && executorGauge("executor.queued") == queuedBefore) {
+                Thread.sleep(10);
+            }
+        }
+        return blockers;
+    }
+
+    private Thread startBlocker(CountDownLatch running, AtomicBoolean rejected) {
+        Thread blocker = new Thread(() -> {
+            try {
+                passwordHashingExecutor.execute(() -> {
+                    running.countDown();
+                    return hashingBlocked.await(10, TimeUnit.SECONDS);
+                });
+            } catch (PasswordHashingRejectedException e) {
+                rejected.set(true);
+            }
+        });
+        blocker.start();
+        return blocker;
+    }
+
+    private double executorGauge(String name) {
+        return meterRegistry.get(name).tag("name", "password-hashing").gauge().value();
+    }
+
+    private void release(List<Thread> blockers) throws InterruptedException {
+        hashingBlocked.countDown();
+        for (Thread blocker : blockers) {
+            blocker.join();
+        }
+    }
+
+    private void authenticate(String username) {
+        testRestTemplate.getRestTemplate().getInterceptors().add(new BasicAuthenticationInterceptor(username, "P4ssword"));
+    }
+
+    private UserUpdateVM createValidUserUpdateVM() {
+        UserUpdateVM updatedUser = new UserUpdateVM();
+        updatedUser.setDisplayName("newDisplayName");
+        return updatedUser;
+    }
+
+    private <T> ResponseEntity<T> postSignupRequest(Object request, Class<T> response){
+        return testRestTemplate.postForEntity(API_1_0_USERS, request, response);
+    }
+
+    private <T> ResponseEntity<T> getUser(String username, Class<T> responseType){
+        return testRestTemplate.getForEntity(API_1_0_USERS + "/" + username, responseType);
+    }
+
+    private <T> ResponseEntity<T> putUser(long id, HttpEntity<?> requestEntity, Class<T> responseType){
+        return testRestTemplate.exchange(API_1_0_USERS + "/" + id, HttpMethod.PUT, requestEntity, responseType);
+    }
+}
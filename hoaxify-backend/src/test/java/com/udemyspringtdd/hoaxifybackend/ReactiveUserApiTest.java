@@ -0,0 +1,177 @@
+package com.udemyspringtdd.hoaxifybackend;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.udemyspringtdd.hoaxifybackend.error.ApiError;
+import com.udemyspringtdd.hoaxifybackend.reactive.ReactiveHoaxifyApplication;
+import com.udemyspringtdd.hoaxifybackend.shared.GenericResponse;
+import com.udemyspringtdd.hoaxifybackend.user.vm.LoginVM;
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserUpdateVM;
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserVM;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpStatus;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.List;
+import java.util.Map;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = ReactiveHoaxifyApplication.class, webEnvironment = WebEnvironment.RANDOM_PORT)
+@ActiveProfiles({"reactive", "test"})
+public class ReactiveUserApiTest {
+
+    private static final String API_1_0_USERS = "/api/1.0/users";
+
+    private static final ParameterizedTypeReference<Map<String, Object>> JSON_OBJECT = new ParameterizedTypeReference<>() {};
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @Autowired
+    DatabaseClient databaseClient;
+
+    @Before
+    public void cleanUp(){
+        databaseClient.sql("delete from user").then().block();
+    }
+
+    @Test
+    public void postUser_whenUserIsValid_receiveSuccessMessage(){
+        GenericResponse response = postSignup(TestUtil.createValidUser())
+                .expectStatus().isOk()
+                .expectBody(GenericResponse.class).returnResult().getResponseBody();
+        assertThat(response.getMessage()).isEqualTo("User Saved!");
+    }
+
+    @Test
+    public void postUser_whenAnotherUserHasSameUsername_receiveApiErrorWithUsernameError(){
+        postSignup(TestUtil.createValidUser()).expectStatus().isOk();
+
+        ApiError error = postSignup(TestUtil.createValidUser())
+                .expectStatus().isBadRequest()
+                .expectBody(ApiError.class).returnResult().getResponseBody();
+        assertThat(error.getValidationErrors().get("username")).isEqualTo("Username already in use");
+    }
+
+    @Test
+    public void postUser_whenAnotherUserHasSameUsernameInOtherCase_receiveApiErrorWithUsernameError(){
+        postSignup(TestUtil.createValidUser("test-user")).expectStatus().isOk();
+
+        ApiError error = postSignup(TestUtil.createValidUser("Test-User"))
+                .expectStatus().isBadRequest()
+                .expectBody(ApiError.class).returnResult().getResponseBody();
+        assertThat(error.getValidationErrors().get("username")).isEqualTo("Username already in use");
+    }
+
+    @Test
+    public void getUserByUsername_whenNameDiffersInCase_receiveNotFound(){
+        postSignup(TestUtil.createValidUser("test-user")).expectStatus().isOk();
+
+        webTestClient.get().uri(API_1_0_USERS + "/Test-User").exchange().expectStatus().isNotFound();
+    }
+
+    @Test
+    public void getUserByUsername_whenUserExists_receiveUserWithoutPassword(){
+        postSignup(TestUtil.createValidUser()).expectStatus().isOk();
+
+        Map<String, Object> body = webTestClient.get().uri(API_1_0_USERS + "/test-user").exchange()
+                .expectStatus().isOk()
+                .expectBody(JSON_OBJECT).returnResult().getResponseBody();
+        assertThat(body.get("username")).isEqualTo("test-user");
+        assertThat(body.containsKey("password")).isFalse();
+    }
+
+    @Test
+    public void getUserByUsername_whenUserDoesNotExist_receiveApiError(){
+        ApiError error = webTestClient.get().uri(API_1_0_USERS + "/unknown-user").exchange()
+                .expectStatus().isNotFound()
+                .expectBody(ApiError.class).returnResult().getResponseBody();
+        assertThat(error.getMessage()).contains("unknown-user");
+    }
+
+    @Test
+    public void getUsers_whenUserLoggedIn_receivePageWithoutLoggedInUser(){
+        postSignup(TestUtil.createValidUser("user1")).expectStatus().isOk();
+        postSignup(TestUtil.createValidUser("user2")).expectStatus().isOk();
+        postSignup(TestUtil.createValidUser("user3")).expectStatus().isOk();
+
+        Map<String, Object> page = webTestClient.get().uri(API_1_0_USERS)
+                .headers(headers -> headers.setBasicAuth("user1", "P4ssword"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(JSON_OBJECT).returnResult().getResponseBody();
+        assertThat(page.get("totalElements")).isEqualTo(2);
+        assertThat((List<?>) page.get("content")).hasSize(2);
+    }
+
+    @Test
+    public void postLogin_withValidCredentials_receiveTokenThatAuthorizesUpdate(){
+        postSignup(TestUtil.createValidUser()).expectStatus().isOk();
+        LoginVM login = login("test-user", "P4ssword")
+                .expectStatus().isOk()
+                .expectBody(LoginVM.class).returnResult().getResponseBody();
+
+        UserUpdateVM update = new UserUpdateVM();
+        update.setDisplayName("new-display");
+        UserVM updated = webTestClient.put().uri(API_1_0_USERS + "/" + login.getId())
+                .headers(headers -> headers.setBearerAuth(login.getToken()))
+                .bodyValue(update)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(UserVM.class).returnResult().getResponseBody();
+        assertThat(updated.getDisplayName()).isEqualTo("new-display");
+    }
+
+    @Test
+    public void postLogin_withAccessToken_receiveUnauthorized(){
+        postSignup(TestUtil.createValidUser()).expectStatus().isOk();
+        LoginVM login = login("test-user", "P4ssword").expectBody(LoginVM.class).returnResult().getResponseBody();
+
+        webTestClient.post().uri("/api/1.0/login")
+                .headers(headers -> headers.setBearerAuth(login.getToken()))
+                .exchange()
+                .expectStatus().isUnauthorized();
+    }
+
+    @Test
+    public void putUser_whenAuthorizedUserUpdatesAnotherUser_receiveForbidden(){
+        postSignup(TestUtil.createValidUser()).expectStatus().isOk();
+        LoginVM login = login("test-user", "P4ssword").expectBody(LoginVM.class).returnResult().getResponseBody();
+
+        ApiError error = webTestClient.put().uri(API_1_0_USERS + "/" + (login.getId() + 1000))
+                .headers(headers -> headers.setBearerAuth(login.getToken()))
+                .bodyValue(new UserUpdateVM())
+                .exchange()
+                .expectStatus().isForbidden()
+                .expectBody(ApiError.class).returnResult().getResponseBody();
+        assertThat(error.getStatus()).isEqualTo(HttpStatus.FORBIDDEN.value());
+    }
+
+    @Test
+    public void postLogin_withWrongPassword_receiveUnauthorizedWithoutAuthenticateHeader(){
+        postSignup(TestUtil.createValidUser()).expectStatus().isOk();
+
+        login("test-user", "Wr0ngPassword")
+                .expectStatus().isUnauthorized()
+                .expectHeader().doesNotExist("WWW-Authenticate");
+    }
+
+    private WebTestClient.ResponseSpec postSignup(Object user){
+        return webTestClient.post().uri(API_1_0_USERS).bodyValue(user).exchange();
+    }
+
+    private WebTestClient.ResponseSpec login(String username, String password){
+        return webTestClient.post().uri("/api/1.0/login")
+                .headers(headers -> headers.setBasicAuth(username, password))
+                .exchange();
+    }
+}
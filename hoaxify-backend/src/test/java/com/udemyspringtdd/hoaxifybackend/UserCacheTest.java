@@ -0,0 +1,158 @@
+package com.udemyspringtdd.hoaxifybackend;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.udemyspringtdd.hoaxifybackend.user.User;
+import com.udemyspringtdd.hoaxifybackend.user.UserCache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+public class UserCacheTest {
+
+    @Autowired
+    UserCache userCache;
+
+    @Before
+    public void cleanUp(){
+        userCache.invalidateAll();
+    }
+
+    @Test
+    public void userCache_whenSameUsernameIsMissedConcurrently_loadsItOnce() throws Exception {
+        User user = TestUtil.createValidUser("user1");
+        AtomicInteger loads = new AtomicInteger();
+
+        List<User> results = missConcurrently("user1", 4, () -> {
+            loads.incrementAndGet();
+            return user;
+        });
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(results).containsOnly(user);
+    }
+
+    @Test
+    public void userCache_whenMissingUsernameIsMissedConcurrently_loadsItOnce() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+
+        List<User> results = missConcurrently("unknown-user", 4, () -> {
+            loads.incrementAndGet();
+            return null;
+        });
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(results).containsOnlyNulls();
+    }
+
+    @Test
+    public void userCache_whenUsernameIsInvalidatedDuringLoad_nextCallerLoadsAgain() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService callers = Executors.newSingleThreadExecutor();
+        try {
+            Future<User> first = callers.submit(() -> userCache.get("user1", name -> {
+                loading.countDown();
+                awaitQuietly(release);
+                return TestUtil.createValidUser("user1");
+            }));
+            loading.await(10, TimeUnit.SECONDS);
+            userCache.invalidate("user1");
+
+            User fresh = TestUtil.createValidUser("user1");
+            assertThat(userCache.get("user1", name -> fresh)).isSameAs(fresh);
+            release.countDown();
+            first.get(10, TimeUnit.SECONDS);
+        } finally {
+            release.countDown();
+            callers.shutdown();
+        }
+    }
+
+    @Test
+    public void userCache_whenOtherUsernameIsInvalidatedDuringLoad_cachesLoadedUser() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        User user = TestUtil.createValidUser("user1");
+        ExecutorService callers = Executors.newSingleThreadExecutor();
+        try {
+            Future<User> first = callers.submit(() -> userCache.get("user1", name -> {
+                loading.countDown();
+                awaitQuietly(release);
+                return user;
+            }));
+            loading.await(10, TimeUnit.SECONDS);
+            userCache.invalidate("user2");
+            release.countDown();
+            first.get(10, TimeUnit.SECONDS);
+
+            AtomicInteger loads = new AtomicInteger();
+            assertThat(userCache.get("user1", name -> {
+                loads.incrementAndGet();
+                return TestUtil.createValidUser("user1");
+            })).isSameAs(user);
+            assertThat(loads.get()).isZero();
+        } finally {
+            release.countDown();
+            callers.shutdown();
+        }
+    }
+
+    // the first caller's load blocks until every other caller has joined it
+    private List<User> missConcurrently(String username, int callerCount, Supplier<User> load) throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Function<String, User> loader = name -> {
+            loading.countDown();
+            awaitQuietly(release);
+            return load.get();
+        };
+        long coalescedBefore = userCache.coalescedLoads();
+        ExecutorService callers = Executors.newFixedThreadPool(callerCount);
+        try {
+            List<Future<User>> futures = new ArrayList<>();
+            futures.add(callers.submit(() -> userCache.get(username, loader)));
+            loading.await(10, TimeUnit.SECONDS);
+            for (int i = 1; i < callerCount; i++) {
+                futures.add(callers.submit(() -> userCache.get(username, loader)));
+            }
+            while (userCache.coalescedLoads() < coalescedBefore + callerCount - 1) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+            List<User> results = new ArrayList<>();
+            for (Future<User> future : futures) {
+                results.add(future.get(10, TimeUnit.SECONDS));
+            }
+            return results;
+        } finally {
+            release.countDown();
+            callers.shutdown();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
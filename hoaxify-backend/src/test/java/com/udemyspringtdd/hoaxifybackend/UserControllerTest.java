@@ -2,10 +2,20 @@ package com.udemyspringtdd.hoaxifybackend;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import com.udemyspringtdd.hoaxifybackend.configuration.AppConfiguration;
 import com.udemyspringtdd.hoaxifybackend.error.ApiError;
+import com.udemyspringtdd.hoaxifybackend.shared.CursorSlice;
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserBatchVM;
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserImportErrorVM;
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserImportResultVM;
 import com.udemyspringtdd.hoaxifybackend.user.UserService;
 import com.udemyspringtdd.hoaxifybackend.user.vm.UserUpdateVM;
 import com.udemyspringtdd.hoaxifybackend.user.vm.UserVM;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -14,20 +24,48 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.data.domain.Page;
 import org.springframework.http.*;
 import org.springframework.http.client.support.BasicAuthenticationInterceptor;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
 
 import com.udemyspringtdd.hoaxifybackend.shared.GenericResponse;
+import com.udemyspringtdd.hoaxifybackend.user.UserCache;
+import com.udemyspringtdd.hoaxifybackend.user.UserCount;
+import com.udemyspringtdd.hoaxifybackend.user.UserExportService;
+import com.udemyspringtdd.hoaxifybackend.user.UserPageCache;
 import com.udemyspringtdd.hoaxifybackend.user.UserRepository;
+import com.udemyspringtdd.hoaxifybackend.user.UserSearchIndex;
+import com.udemyspringtdd.hoaxifybackend.user.UsernameBloomFilter;
 import com.udemyspringtdd.hoaxifybackend.user.User;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.zip.CRC32;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
@@ -36,6 +74,12 @@ public class UserControllerTest {
 
     public static final String API_1_0_USERS = "/api/1.0/users";
 
+    public static final String API_1_0_EXPORT_USERS = "/api/1.0/export/users";
+
+    private static final MediaType SMILE = MediaType.parseMediaType("application/x-jackson-smile");
+
+    private static final MediaType CBOR = MediaType.parseMediaType("application/cbor");
+
     @Autowired
     TestRestTemplate testRestTemplate;
 
@@ -45,9 +89,41 @@ public class UserControllerTest {
     @Autowired
     UserService userService;
 
+    @Autowired
+    UserCache userCache;
+
+    @Autowired
+    UserPageCache userPageCache;
+
+    @Autowired
+    UserSearchIndex userSearchIndex;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    UserCount userCount;
+
+    @Autowired
+    UserExportService userExportService;
+
+    @Autowired
+    UsernameBloomFilter usernameBloomFilter;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    AppConfiguration appConfiguration;
+
     @Before
     public void cleanUp(){
         userRepository.deleteAll();
+        userCache.invalidateAll();
+        userPageCache.invalidateAll();
+        userSearchIndex.rebuild();
+        usernameBloomFilter.rebuild();
+        userCount.reconcile();
         testRestTemplate.getRestTemplate().getInterceptors().clear();
     }
 
@@ -242,6 +318,38 @@ public class UserControllerTest {
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
     }
 
+    @Test
+    public void postUser_whenOtherUserHasSameUsernameInOtherCase_receiveDuplicatedUsernameMessage(){
+        userService.save(TestUtil.createValidUser("user1"));
+
+        ResponseEntity<ApiError> response = postSignupRequest(TestUtil.createValidUser("USER1"), ApiError.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(response.getBody().getValidationErrors().get("username")).isEqualTo("Username already in use");
+    }
+
+    @Test
+    public void postUser_whenSameUsernameIsPostedConcurrently_onlyOneUserIsSaved() throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<ResponseEntity<ApiError>>> responses = clients.invokeAll(IntStream.range(0, 4)
+                    .mapToObj(i -> (Callable<ResponseEntity<ApiError>>) () -> postSignupRequest(TestUtil.createValidUser("user1"), ApiError.class))
+                    .collect(Collectors.toList()));
+            int saved = 0;
+            for (Future<ResponseEntity<ApiError>> response : responses) {
+                if (response.get().getStatusCode() == HttpStatus.OK) {
+                    saved++;
+                } else {
+                    assertThat(response.get().getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+                    assertThat(response.get().getBody().getValidationErrors().get("username")).isEqualTo("Username already in use");
+                }
+            }
+            assertThat(saved).isEqualTo(1);
+            assertThat(userRepository.count()).isEqualTo(1);
+        } finally {
+            clients.shutdown();
+        }
+    }
+
     @Test
     public void postUser_whenOtherUserHasSameUsername_receiveDuplicatedUsernameMessage(){
         userRepository.save(TestUtil.createValidUser()); //saves the test-user into the database
@@ -252,6 +360,26 @@ public class UserControllerTest {
         assertThat(validationErrors.get("username")).isEqualTo("Username already in use");
     }
 
+    @Test
+    public void postUser_whenOtherUserWasSavedThroughRepository_receiveBadRequestWithoutHashing(){
+        userRepository.save(TestUtil.createValidUser("user1"));
+        double positives = meterRegistry.counter("username.filter.checks", "result", "positive").count();
+        long hashes = meterRegistry.timer("password.encode").count();
+
+        ResponseEntity<ApiError> response = postSignupRequest(TestUtil.createValidUser("user1"), ApiError.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(response.getBody().getValidationErrors().get("username")).isEqualTo("Username already in use");
+        assertThat(meterRegistry.counter("username.filter.checks", "result", "positive").count()).isEqualTo(positives + 1);
+        assertThat(meterRegistry.timer("password.encode").count()).isEqualTo(hashes);
+    }
+
+    @Test
+    public void postUser_whenUsernameIsFree_uniquenessCheckSkipsDatabase(){
+        double before = meterRegistry.counter("username.filter.checks", "result", "negative").count();
+        postSignupRequest(TestUtil.createValidUser("never-used-before"), Object.class);
+        assertThat(meterRegistry.counter("username.filter.checks", "result", "negative").count()).isEqualTo(before + 1);
+    }
+
     @Test
     public void getUsers_whenThereAreNoUsersInDB_receiveOK() {
         ResponseEntity<Object> response = getUsers(new ParameterizedTypeReference<Object>() {});
@@ -316,6 +444,49 @@ public class UserControllerTest {
         assertThat(response.getBody().getNumber()).isEqualTo(0);
     }
 
+    @Test
+    public void getUsers_whenUsersFillMoreThanOnePage_receiveTotalOfAllUsers(){
+        IntStream.rangeClosed(1, 12).mapToObj(i -> TestUtil.createValidUser("user" + i)).forEach(userService::save);
+        String path = API_1_0_USERS + "?page=0&size=5";
+        ResponseEntity<TestPage<Object>> response = getUsers(path, new ParameterizedTypeReference<TestPage<Object>>() {});
+        assertThat(response.getBody().getTotalElements()).isEqualTo(12);
+        assertThat(response.getBody().getTotalPages()).isEqualTo(3);
+    }
+
+    @Test
+    public void getUsers_whenUserLoggedInAndUsersFillMoreThanOnePage_receiveTotalWithoutLoggedInUser(){
+        IntStream.rangeClosed(1, 12).mapToObj(i -> TestUtil.createValidUser("user" + i)).forEach(userService::save);
+        authenticate("user1");
+        String path = API_1_0_USERS + "?page=0&size=5";
+        ResponseEntity<TestPage<Object>> response = getUsers(path, new ParameterizedTypeReference<TestPage<Object>>() {});
+        assertThat(response.getBody().getTotalElements()).isEqualTo(11);
+    }
+
+    @Test
+    public void getUsers_whenCountIsReconciledBetweenInsertAndAdd_receiveTotalCountingUserOnce(){
+        IntStream.rangeClosed(1, 6).mapToObj(i -> TestUtil.createValidUser("user" + i)).forEach(userService::save);
+        userCount.inserting(1, () -> {
+            User saved = userRepository.save(TestUtil.createValidUser("user7"));
+            userCount.reconcile();
+            return saved;
+        });
+
+        ResponseEntity<TestPage<Object>> response = getUsers(API_1_0_USERS + "?page=0&size=5", new ParameterizedTypeReference<TestPage<Object>>() {});
+        assertThat(response.getBody().getTotalElements()).isEqualTo(7);
+    }
+
+    @Test
+    public void getUsers_whenUserWasInsertedBehindTheServiceAndCountIsReconciled_receiveTotalWithThatUser(){
+        IntStream.rangeClosed(1, 6).mapToObj(i -> TestUtil.createValidUser("user" + i)).forEach(userService::save);
+        String path = API_1_0_USERS + "?page=0&size=5";
+        getUsers(path, new ParameterizedTypeReference<Object>() {});
+        userRepository.save(TestUtil.createValidUser("user7"));
+
+        userCount.reconcile();
+        ResponseEntity<TestPage<Object>> response = getUsers(path, new ParameterizedTypeReference<TestPage<Object>>() {});
+        assertThat(response.getBody().getTotalElements()).isEqualTo(7);
+    }
+
     @Test
     public void getUsers_whenUserLoggedIn_receivePageWithoutLoggedInUser(){
         userService.save(TestUtil.createValidUser("user1"));
@@ -327,6 +498,44 @@ public class UserControllerTest {
 
     }
 
+    @Test
+    public void getUsersAfter_whenCursorIsEmpty_receiveFirstUsersWithNextCursor(){
+        IntStream.rangeClosed(1, 5).mapToObj(i -> "test-user-" + i)
+                .map(TestUtil::createValidUser)
+                .forEach(userRepository::save);
+        ResponseEntity<CursorSlice<UserVM>> response = getUsers(API_1_0_USERS + "?after=&size=3", new ParameterizedTypeReference<CursorSlice<UserVM>>() {});
+        assertThat(response.getBody().getContent()).extracting(UserVM::getUsername)
+                .containsExactly("test-user-1", "test-user-2", "test-user-3");
+        assertThat(response.getBody().getNext()).isNotNull();
+    }
+
+    @Test
+    public void getUsersAfter_whenNextCursorIsFollowed_receiveRemainingUsersAndNoNextCursor(){
+        IntStream.rangeClosed(1, 5).mapToObj(i -> "test-user-" + i)
+                .map(TestUtil::createValidUser)
+                .forEach(userRepository::save);
+        String next = getUsers(API_1_0_USERS + "?after=&size=3", new ParameterizedTypeReference<CursorSlice<UserVM>>() {}).getBody().getNext();
+
+        ResponseEntity<CursorSlice<UserVM>> response = getUsers(API_1_0_USERS + "?after=" + next + "&size=3", new ParameterizedTypeReference<CursorSlice<UserVM>>() {});
+        assertThat(response.getBody().getContent()).extracting(UserVM::getUsername).containsExactly("test-user-4", "test-user-5");
+        assertThat(response.getBody().getNext()).isNull();
+    }
+
+    @Test
+    public void getUsersAfter_whenUserLoggedIn_receiveSliceWithoutLoggedInUser(){
+        userService.save(TestUtil.createValidUser("user1"));
+        userService.save(TestUtil.createValidUser("user2"));
+        authenticate("user1");
+        ResponseEntity<CursorSlice<UserVM>> response = getUsers(API_1_0_USERS + "?after=", new ParameterizedTypeReference<CursorSlice<UserVM>>() {});
+        assertThat(response.getBody().getContent()).extracting(UserVM::getUsername).containsExactly("user2");
+    }
+
+    @Test
+    public void getUsersAfter_whenCursorIsInvalid_receiveBadRequest(){
+        ResponseEntity<Object> response = getUsers(API_1_0_USERS + "?after=not-a-cursor", new ParameterizedTypeReference<Object>() {});
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
     @Test
     public void getUserByUsername_whenUserExists_receiveOk(){
         String username = "test-user";
@@ -357,6 +566,262 @@ public class UserControllerTest {
         assertThat(response.getBody().getMessage().contains("unknown-user")).isTrue();
     }
 
+    @Test
+    public void getUserByUsername_whenUserIsRequestedTwice_receiveSecondFromUserCache(){
+        String username = "test-user";
+        userService.save(TestUtil.createValidUser(username));
+        getUser(username, Object.class);
+        long hitsBefore = userCache.stats().hitCount();
+
+        getUser(username, Object.class);
+        assertThat(userCache.stats().hitCount()).isEqualTo(hitsBefore + 1);
+    }
+
+    @Test
+    public void postUsersBatch_withUsernames_receiveUsersInRequestOrderWithMissingInline(){
+        userService.save(TestUtil.createValidUser("user1"));
+        userService.save(TestUtil.createValidUser("user2"));
+        UserBatchVM batch = new UserBatchVM();
+        batch.setUsernames(List.of("user2", "unknown-user", "user1"));
+
+        List<Map<String, Object>> entries = postUsersBatch(batch).getBody();
+        assertThat(entries).extracting(entry -> entry.get("key")).containsExactly("user2", "unknown-user", "user1");
+        assertThat(entries).extracting(entry -> entry.get("found")).containsExactly(true, false, true);
+        assertThat(((Map<?, ?>) entries.get(0).get("user")).get("username")).isEqualTo("user2");
+        assertThat(entries.get(1).containsKey("user")).isFalse();
+    }
+
+    @Test
+    public void postUsersBatch_withIds_receiveUsersInRequestOrder(){
+        User user1 = userService.save(TestUtil.createValidUser("user1"));
+        User user2 = userService.save(TestUtil.createValidUser("user2"));
+        UserBatchVM batch = new UserBatchVM();
+        batch.setIds(List.of(user2.getId(), user1.getId(), user2.getId()));
+
+        List<Map<String, Object>> entries = postUsersBatch(batch).getBody();
+        assertThat(entries).extracting(entry -> (Object) ((Map<?, ?>) entry.get("user")).get("username")).containsExactly("user2", "user1", "user2");
+    }
+
+    @Test
+    public void postUsersBatch_withUsernames_runsOneQuery(){
+        IntStream.rangeClosed(1, 5).mapToObj(i -> TestUtil.createValidUser("user" + i)).forEach(userService::save);
+        UserBatchVM batch = new UserBatchVM();
+        batch.setUsernames(List.of("user1", "user2", "user3", "user4", "user5"));
+        long queriesBefore = meterRegistry.find("spring.data.repository.invocations").timers().stream().mapToLong(Timer::count).sum();
+
+        postUsersBatch(batch);
+        long queriesAfter = meterRegistry.find("spring.data.repository.invocations").timers().stream().mapToLong(Timer::count).sum();
+        assertThat(queriesAfter).isEqualTo(queriesBefore + 1);
+    }
+
+    @Test
+    public void postUsersBatch_withMoreKeysThanAllowed_receiveBadRequest(){
+        UserBatchVM batch = new UserBatchVM();
+        batch.setIds(LongStream.rangeClosed(1, appConfiguration.getUserBatch().getMaxSize()).boxed().collect(Collectors.toList()));
+        batch.setUsernames(List.of("user1"));
+
+        ResponseEntity<Object> response = testRestTemplate.postForEntity(API_1_0_USERS + "/batch", batch, Object.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    private ResponseEntity<List<Map<String, Object>>> postUsersBatch(UserBatchVM batch) {
+        return testRestTemplate.exchange(API_1_0_USERS + "/batch", HttpMethod.POST, new HttpEntity<>(batch),
+                new ParameterizedTypeReference<List<Map<String, Object>>>() {});
+    }
+
+    @Test
+    public void getExportUsers_whenUnauthorized_receiveUnauthorized(){
+        ResponseEntity<Object> response = testRestTemplate.getForEntity(API_1_0_EXPORT_USERS, Object.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+    }
+
+    @Test
+    public void getExportUsers_whenUserIsNoOperator_receiveForbidden(){
+        userService.save(TestUtil.createValidUser("user1"));
+        authenticate("user1");
+
+        ResponseEntity<Object> response = testRestTemplate.getForEntity(API_1_0_EXPORT_USERS, Object.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+    }
+
+    @Test
+    public void getExportUsers_whenEveryExportSlotIsTaken_receiveServiceUnavailableWithRetryAfter(){
+        userService.save(TestUtil.createValidUser("exporter"));
+        authenticate("exporter");
+        int taken = 0;
+        try {
+            while (userExportService.tryStart()) {
+                taken++;
+            }
+            ResponseEntity<ApiError> response = testRestTemplate.getForEntity(API_1_0_EXPORT_USERS, ApiError.class);
+            assertThat(response.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+            assertThat(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isNotNull();
+            assertThat(response.getBody().getStatus()).isEqualTo(503);
+        } finally {
+            for (int i = 0; i < taken; i++) {
+                userExportService.finished();
+            }
+        }
+        assertThat(testRestTemplate.getForEntity(API_1_0_EXPORT_USERS, String.class).getStatusCode()).isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    public void getExportUsers_whenAuthorized_receiveEveryUserAsOneJsonLine() throws IOException {
+        userService.save(TestUtil.createValidUser("exporter"));
+        IntStream.rangeClosed(1, 2).mapToObj(i -> TestUtil.createValidUser("user" + i)).forEach(userService::save);
+        authenticate("exporter");
+
+        ResponseEntity<String> response = testRestTemplate.getForEntity(API_1_0_EXPORT_USERS, String.class);
+        assertThat(response.getHeaders().getContentType().toString()).isEqualTo("application/x-ndjson");
+        List<String> lines = response.getBody().lines().collect(Collectors.toList());
+        assertThat(lines).hasSize(3);
+        List<String> usernames = new ArrayList<>();
+        for (String line : lines) {
+            usernames.add(objectMapper.readValue(line, UserVM.class).getUsername());
+        }
+        assertThat(usernames).containsExactlyInAnyOrder("exporter", "user1", "user2");
+    }
+
+    @Test
+    public void getExportUsers_whenCsvIsRequested_receiveHeaderAndQuotedFields(){
+        User user = TestUtil.createValidUser("exporter");
+        user.setDisplayName("Doe, \"J\"");
+        userService.save(user);
+        authenticate("exporter");
+
+        ResponseEntity<String> response = testRestTemplate.getForEntity(API_1_0_EXPORT_USERS + "?format=csv", String.class);
+        List<String> lines = response.getBody().lines().collect(Collectors.toList());
+        assertThat(lines).containsExactly("id,username,displayName,image", user.getId() + ",exporter,\"Doe, \"\"J\"\"\",profile-image.png");
+    }
+
+    @Test
+    public void getExportUsers_whenDisplayNameLooksLikeFormula_receiveItPrefixedAsText(){
+        User user = TestUtil.createValidUser("exporter");
+        user.setDisplayName("=HYPERLINK(1)");
+        userService.save(user);
+        authenticate("exporter");
+
+        ResponseEntity<String> response = testRestTemplate.getForEntity(API_1_0_EXPORT_USERS + "?format=csv", String.class);
+        assertThat(response.getBody().lines()).contains(user.getId() + ",exporter,'=HYPERLINK(1),profile-image.png");
+    }
+
+    @Test
+    public void getExportUsers_whenFormatIsUnknown_receiveBadRequest(){
+        userService.save(TestUtil.createValidUser("exporter"));
+        authenticate("exporter");
+
+        ResponseEntity<Object> response = testRestTemplate.getForEntity(API_1_0_EXPORT_USERS + "?format=xml", Object.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    @Test
+    public void getUsers_whenSmileIsAccepted_receivePageAsSmile() throws IOException {
+        IntStream.rangeClosed(1, 3).mapToObj(i -> TestUtil.createValidUser("user" + i)).forEach(userService::save);
+
+        ResponseEntity<byte[]> response = getWithAccept(API_1_0_USERS, SMILE);
+        assertThat(response.getHeaders().getContentType()).isEqualTo(SMILE);
+        assertThat(response.getHeaders().getVary()).contains(HttpHeaders.ACCEPT);
+        Map<?, ?> page = new SmileMapper().readValue(response.getBody(), Map.class);
+        assertThat(page.get("totalElements")).isEqualTo(3);
+        assertThat((List<?>) page.get("content")).hasSize(3);
+    }
+
+    @Test
+    public void getUsers_whenJsonAndSmileAreCachedForTheSamePage_receiveEachInItsFormat() throws IOException {
+        userService.save(TestUtil.createValidUser("user1"));
+        getWithAccept(API_1_0_USERS, SMILE);
+
+        ResponseEntity<byte[]> response = getWithAccept(API_1_0_USERS, MediaType.APPLICATION_JSON);
+        assertThat(response.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_JSON);
+        assertThat(objectMapper.readValue(response.getBody(), Map.class).get("totalElements")).isEqualTo(1);
+    }
+
+    @Test
+    public void getUsers_whenLoggedInAndCborIsAccepted_receivePageAsCbor() throws IOException {
+        IntStream.rangeClosed(1, 3).mapToObj(i -> TestUtil.createValidUser("user" + i)).forEach(userService::save);
+        authenticate("user1");
+
+        ResponseEntity<byte[]> response = getWithAccept(API_1_0_USERS, CBOR);
+        assertThat(response.getHeaders().getContentType()).isEqualTo(CBOR);
+        Map<?, ?> page = new CBORMapper().readValue(response.getBody(), Map.class);
+        assertThat((List<?>) page.get("content")).hasSize(2);
+    }
+
+    @Test
+    public void getUsers_whenBrowserAcceptHeaderIsSent_receiveJson(){
+        userService.save(TestUtil.createValidUser("user1"));
+        MediaType browser = MediaType.parseMediaType("*/*;q=0.8");
+
+        assertThat(getWithAccept(API_1_0_USERS, MediaType.TEXT_HTML, browser).getHeaders().getContentType())
+                .isEqualTo(MediaType.APPLICATION_JSON);
+        assertThat(getWithAccept(API_1_0_USERS + "/user1", MediaType.TEXT_HTML, browser).getHeaders().getContentType())
+                .isEqualTo(MediaType.APPLICATION_JSON);
+    }
+
+    @Test
+    public void getUsers_whenETagOfJsonIsSentForSmile_receiveSmile(){
+        userService.save(TestUtil.createValidUser("user1"));
+        String etag = getWithAccept(API_1_0_USERS, MediaType.APPLICATION_JSON).getHeaders().getETag();
+
+        ResponseEntity<byte[]> response = getWithAcceptAndIfNoneMatch(API_1_0_USERS, SMILE, etag);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getHeaders().getContentType()).isEqualTo(SMILE);
+        assertThat(response.getHeaders().getETag()).isNotEqualTo(etag);
+    }
+
+    @Test
+    public void getUserByUsername_whenETagOfCborIsSentForCbor_receiveNotModified(){
+        userService.save(TestUtil.createValidUser("user1"));
+        String etag = getWithAccept(API_1_0_USERS + "/user1", CBOR).getHeaders().getETag();
+
+        assertThat(getWithAcceptAndIfNoneMatch(API_1_0_USERS + "/user1", CBOR, etag).getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(getWithAcceptAndIfNoneMatch(API_1_0_USERS + "/user1", MediaType.APPLICATION_JSON, etag).getStatusCode())
+                .isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    public void getUserByUsername_whenCborIsAccepted_receiveUserAsCbor() throws IOException {
+        userService.save(TestUtil.createValidUser("user1"));
+
+        ResponseEntity<byte[]> response = getWithAccept(API_1_0_USERS + "/user1", CBOR);
+        assertThat(response.getHeaders().getContentType()).isEqualTo(CBOR);
+        assertThat(new CBORMapper().readValue(response.getBody(), UserVM.class).getUsername()).isEqualTo("user1");
+    }
+
+    @Test
+    public void getUserByUsername_whenUserDoesNotExistAndSmileIsAccepted_receiveApiErrorAsSmile() throws IOException {
+        ResponseEntity<byte[]> response = getWithAccept(API_1_0_USERS + "/unknown-user", SMILE);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+        assertThat(response.getHeaders().getContentType()).isEqualTo(SMILE);
+        assertThat(new SmileMapper().readValue(response.getBody(), ApiError.class).getStatus()).isEqualTo(404);
+    }
+
+    @Test
+    public void postUser_whenBodyIsSmile_saveUser() throws IOException {
+        User user = TestUtil.createValidUser("user1");
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(SMILE);
+        headers.setAccept(List.of(SMILE));
+        HttpEntity<byte[]> request = new HttpEntity<>(new SmileMapper().writeValueAsBytes(user), headers);
+
+        ResponseEntity<byte[]> response = testRestTemplate.exchange(API_1_0_USERS, HttpMethod.POST, request, byte[].class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(new SmileMapper().readValue(response.getBody(), GenericResponse.class).getMessage()).isNotNull();
+        assertThat(userRepository.existsByUsername("user1")).isTrue();
+    }
+
+    @Test
+    public void getUserByUsername_whenDisplayNameIsUpdated_receiveUpdatedDisplayName(){
+        User user = userService.save(TestUtil.createValidUser("user1"));
+        getUser(user.getUsername(), Object.class);
+        authenticate(user.getUsername());
+        UserUpdateVM updatedUser = createValidUserUpdateVM();
+        putUser(user.getId(), new HttpEntity<>(updatedUser), Object.class);
+
+        ResponseEntity<UserVM> response = getUser(user.getUsername(), UserVM.class);
+        assertThat(response.getBody().getDisplayName()).isEqualTo(updatedUser.getDisplayName());
+    }
+
     @Test
     public void putUser_whenUnauthorizedUserSendsARequest_receiveUnauthorized(){
         String path = API_1_0_USERS + "/123";
@@ -426,12 +891,362 @@ public class UserControllerTest {
         assertThat(response.getBody().getDisplayName()).isEqualTo(updatedUser.getDisplayName());
     }
 
+    @Test
+    public void postImport_whenUnauthorizedUserSendsARequest_receiveUnauthorized(){
+        ResponseEntity<Object> response = postImport(importLine("import-user1"), Object.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+    }
+
+    @Test
+    public void postImport_whenUserIsNoOperator_receiveForbidden(){
+        userService.save(TestUtil.createValidUser("user1"));
+        authenticate("user1");
+
+        ResponseEntity<Object> response = postImport(importLine("import-user1"), Object.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+        assertThat(userRepository.findByUsername("import-user1")).isNull();
+    }
+
+    @Test
+    public void postImport_whenRowsAreValid_saveUsersToDatabase(){
+        userService.save(TestUtil.createValidUser("importer"));
+        authenticate("importer");
+        String body = IntStream.rangeClosed(1, 20).mapToObj(i -> importLine("import-user" + i)).collect(Collectors.joining("\n"));
+
+        ResponseEntity<UserImportResultVM> response = postImport(body, UserImportResultVM.class);
+        assertThat(response.getBody().getImported()).isEqualTo(20);
+        assertThat(userRepository.count()).isEqualTo(21);
+    }
+
+    @Test
+    public void postImport_whenRowsAreValid_passwordIsHashedInDatabase(){
+        userService.save(TestUtil.createValidUser("importer"));
+        authenticate("importer");
+
+        postImport(importLine("import-user1"), UserImportResultVM.class);
+        assertThat(userRepository.findByUsername("import-user1").getPassword()).isNotEqualTo("P4ssword");
+    }
+
+    @Test
+    public void postImport_whenSomeRowsAreInvalid_receiveErrorsPerLineAndImportTheRest(){
+        userService.save(TestUtil.createValidUser("importer"));
+        authenticate("importer");
+        String body = String.join("\n",
+                importLine("import-user1"),
+                "{\"username\":\"abc\",\"displayName\":\"import-display\",\"password\":\"P4ssword\"}",
+                importLine("importer"),
+                importLine("import-user1"),
+                "not json",
+                importLine("import-user2"));
+
+        ResponseEntity<UserImportResultVM> response = postImport(body, UserImportResultVM.class);
+        List<UserImportErrorVM> errors = response.getBody().getErrors();
+        assertThat(response.getBody().getImported()).isEqualTo(2);
+        assertThat(errors).extracting(UserImportErrorVM::getLine).containsExactly(2L, 3L, 4L, 5L);
+        assertThat(errors.get(1).getValidationErrors().get("username")).isEqualTo("Username already in use");
+    }
+
+    @Test
+    public void postUser_whenUserIsValid_passwordHashingIsTimed(){
+        long before = meterRegistry.timer("password.encode").count();
+        postSignupRequest(TestUtil.createValidUser(), Object.class);
+        assertThat(meterRegistry.timer("password.encode").count()).isEqualTo(before + 1);
+    }
+
+    @Test
+    public void getUsers_whenResponseIsWritten_jsonSerialisationIsTimedByType(){
+        long before = meterRegistry.timer("json.write", "type", "PageImpl").count();
+        getUsers(new ParameterizedTypeReference<Object>() {});
+        assertThat(meterRegistry.timer("json.write", "type", "PageImpl").count()).isEqualTo(before + 1);
+    }
+
+    @Test
+    public void searchUsers_whenUsernameOrDisplayNameStartsWithQuery_receiveMatchingUsers(){
+        User first = TestUtil.createValidUser("alice");
+        first.setDisplayName("Zoe");
+        userService.save(first);
+        User second = TestUtil.createValidUser("bob");
+        second.setDisplayName("Álvaro");
+        userService.save(second);
+        userService.save(TestUtil.createValidUser("carol"));
+
+        ResponseEntity<List<UserVM>> response = getUsers(API_1_0_USERS + "/search?q=AL", new ParameterizedTypeReference<List<UserVM>>() {});
+        assertThat(response.getBody()).extracting(UserVM::getUsername).containsExactly("alice", "bob");
+    }
+
+    @Test
+    public void searchUsers_whenDisplayNameIsUpdated_receiveUserOnlyForNewDisplayName(){
+        User user = userService.save(TestUtil.createValidUser("user1"));
+        authenticate(user.getUsername());
+        putUser(user.getId(), new HttpEntity<>(createValidUserUpdateVM()), Object.class);
+
+        ResponseEntity<List<UserVM>> byNewName = getUsers(API_1_0_USERS + "/search?q=newdisp", new ParameterizedTypeReference<List<UserVM>>() {});
+        ResponseEntity<List<UserVM>> byOldName = getUsers(API_1_0_USERS + "/search?q=test-display", new ParameterizedTypeReference<List<UserVM>>() {});
+        assertThat(byNewName.getBody()).extracting(UserVM::getDisplayName).containsExactly("newDisplayName");
+        assertThat(byOldName.getBody()).isEmpty();
+    }
+
+    @Test
+    public void searchUsers_whenResultsExceedPageSize_receiveOnlyPageSizeUsers(){
+        IntStream.rangeClosed(1, 5).mapToObj(i -> TestUtil.createValidUser("user" + i)).forEach(userService::save);
+
+        ResponseEntity<List<UserVM>> response = getUsers(API_1_0_USERS + "/search?q=user&size=3", new ParameterizedTypeReference<List<UserVM>>() {});
+        assertThat(response.getBody()).extracting(UserVM::getUsername).containsExactly("user1", "user2", "user3");
+    }
+
+    @Test
+    public void putUser_whenImageIsUploaded_receiveUserVMWithImageNamedByContentHash() throws Exception {
+        User user = userService.save(TestUtil.createValidUser("user1"));
+        authenticate(user.getUsername());
+        byte[] png = createPng();
+
+        ResponseEntity<UserVM> response = putUserWithImage(user.getId(), png, UserVM.class);
+        String sha256 = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(png));
+        assertThat(response.getBody().getImage()).isEqualTo(sha256 + ".png");
+        assertThat(response.getBody().getDisplayName()).isEqualTo("newDisplayName");
+    }
+
+    @Test
+    public void putUser_whenUploadIsNotAnImage_receiveBadRequest() {
+        User user = userService.save(TestUtil.createValidUser("user1"));
+        authenticate(user.getUsername());
+
+        ResponseEntity<Object> response = putUserWithImage(user.getId(), "not an image".getBytes(), Object.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    @Test
+    public void getProfileImage_whenImageWasUploaded_receiveImageWithLongLivedCacheHeaders() throws IOException {
+        User user = userService.save(TestUtil.createValidUser("user1"));
+        authenticate(user.getUsername());
+        byte[] png = createPng();
+        String image = putUserWithImage(user.getId(), png, UserVM.class).getBody().getImage();
+
+        ResponseEntity<byte[]> response = testRestTemplate.getForEntity("/images/profile/" + image, byte[].class);
+        assertThat(response.getBody()).isEqualTo(png);
+        assertThat(response.getHeaders().getContentType()).isEqualTo(MediaType.IMAGE_PNG);
+        assertThat(response.getHeaders().getCacheControl()).contains("max-age=31536000").contains("immutable");
+        assertThat(response.getHeaders().getETag()).isEqualTo("\"" + image.substring(0, image.indexOf('.')) + "\"");
+    }
+
+    @Test
+    public void getProfileImage_whenETagMatches_receiveNotModified() throws IOException {
+        User user = userService.save(TestUtil.createValidUser("user1"));
+        authenticate(user.getUsername());
+        String image = putUserWithImage(user.getId(), createPng(), UserVM.class).getBody().getImage();
+        String etag = testRestTemplate.getForEntity("/images/profile/" + image, byte[].class).getHeaders().getETag();
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(etag);
+        ResponseEntity<byte[]> response = testRestTemplate.exchange("/images/profile/" + image, HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+    }
+
+    @Test
+    public void getProfileImage_whenImageDoesNotExist_receiveNotFound() {
+        ResponseEntity<Object> response = testRestTemplate.getForEntity("/images/profile/" + "0".repeat(64) + ".png", Object.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    public void getUsers_whenUserHasUploadedImage_receiveSmallestThumbnail() throws Exception {
+        User user = userService.save(TestUtil.createValidUser("user1"));
+        authenticate(user.getUsername());
+        String image = putUserWithImage(user.getId(), createPng(), UserVM.class).getBody().getImage();
+        String hash = image.substring(0, image.indexOf('.'));
+        testRestTemplate.getRestTemplate().getInterceptors().clear();
+
+        String listImage = awaitThumbnail(() -> getUsers(new ParameterizedTypeReference<TestPage<UserVM>>() {})
+                .getBody().getContent().get(0).getImage());
+        assertThat(listImage).isEqualTo(hash + "_64.png");
+        byte[] thumbnail = testRestTemplate.getForEntity("/images/profile/" + listImage, byte[].class).getBody();
+        assertThat(ImageIO.read(new ByteArrayInputStream(thumbnail)).getWidth()).isEqualTo(64);
+    }
+
+    @Test
+    public void getUserByUsername_whenUserHasUploadedImage_receiveLargestThumbnail() throws Exception {
+        User user = userService.save(TestUtil.createValidUser("user1"));
+        authenticate(user.getUsername());
+        String image = putUserWithImage(user.getId(), createPng(), UserVM.class).getBody().getImage();
+
+        String profileImage = awaitThumbnail(() -> getUser("user1", UserVM.class).getBody().getImage());
+        assertThat(profileImage).isEqualTo(image.substring(0, image.indexOf('.')) + "_200.png");
+    }
+
+    @Test
+    public void putUser_whenImageDeclaresTooManyPixels_keepUploadWithoutDecodingIt() throws Exception {
+        User user = userService.save(TestUtil.createValidUser("user1"));
+        authenticate(user.getUsername());
+        double rejectedBefore = meterRegistry.counter("thumbnails.rejected").count();
+
+        // a few bytes that claim 30000x30000 pixels, which would take 3.6 GB to decode
+        String image = putUserWithImage(user.getId(), createPngHeader(30_000, 30_000), UserVM.class).getBody().getImage();
+        for (int i = 0; i < 100 && meterRegistry.counter("thumbnails.rejected").count() == rejectedBefore; i++) {
+            Thread.sleep(50);
+        }
+        assertThat(meterRegistry.counter("thumbnails.rejected").count()).isEqualTo(rejectedBefore + 1);
+        assertThat(getUser("user1", UserVM.class).getBody().getImage()).isEqualTo(image);
+        // so the next start does not queue it again
+        assertThat(Paths.get(appConfiguration.getProfileImages().getPath(), image + ".unreadable")).exists();
+    }
+
+    @Test
+    public void getUserByUsername_whenETagMatches_receiveNotModified(){
+        userService.save(TestUtil.createValidUser("user1"));
+        String etag = getUser("user1", Object.class).getHeaders().getETag();
+
+        ResponseEntity<Object> response = getWithIfNoneMatch(API_1_0_USERS + "/user1", etag);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(response.getBody()).isNull();
+    }
+
+    @Test
+    public void getUserByUsername_whenUserWasUpdatedSinceETag_receiveUpdatedUser(){
+        User user = userService.save(TestUtil.createValidUser("user1"));
+        String etag = getUser("user1", Object.class).getHeaders().getETag();
+        authenticate(user.getUsername());
+        putUser(user.getId(), new HttpEntity<>(createValidUserUpdateVM()), Object.class);
+
+        ResponseEntity<Object> response = getWithIfNoneMatch(API_1_0_USERS + "/user1", etag);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getHeaders().getETag()).isNotEqualTo(etag);
+    }
+
+    @Test
+    public void getUsers_whenETagMatches_receiveNotModifiedWithoutQuery(){
+        userService.save(TestUtil.createValidUser("user1"));
+        String etag = getUsers(new ParameterizedTypeReference<Object>() {}).getHeaders().getETag();
+        long queriesBefore = meterRegistry.find("spring.data.repository.invocations").timers().stream().mapToLong(Timer::count).sum();
+        assertThat(queriesBefore).isPositive();
+
+        ResponseEntity<Object> response = getWithIfNoneMatch(API_1_0_USERS, etag);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        long queriesAfter = meterRegistry.find("spring.data.repository.invocations").timers().stream().mapToLong(Timer::count).sum();
+        assertThat(queriesAfter).isEqualTo(queriesBefore);
+    }
+
+    @Test
+    public void getUsers_whenUserWasSavedSinceETag_receivePageWithNewUser(){
+        userService.save(TestUtil.createValidUser("user1"));
+        String etag = getUsers(new ParameterizedTypeReference<Object>() {}).getHeaders().getETag();
+        userService.save(TestUtil.createValidUser("user2"));
+
+        ResponseEntity<TestPage<Object>> response = testRestTemplate.exchange(API_1_0_USERS, HttpMethod.GET,
+                new HttpEntity<>(ifNoneMatch(etag)), new ParameterizedTypeReference<TestPage<Object>>() {});
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody().getTotalElements()).isEqualTo(2);
+    }
+
+    @Test
+    public void getUsers_whenAnonymousPageIsRequestedTwice_receiveSecondFromPageCache(){
+        IntStream.rangeClosed(1, 3).mapToObj(i -> TestUtil.createValidUser("user" + i)).forEach(userService::save);
+        String first = getUsers(new ParameterizedTypeReference<String>() {}).getBody();
+        long hitsBefore = userPageCache.stats().hitCount();
+
+        String second = getUsers(new ParameterizedTypeReference<String>() {}).getBody();
+        assertThat(userPageCache.stats().hitCount()).isEqualTo(hitsBefore + 1);
+        assertThat(second).isEqualTo(first);
+    }
+
+    @Test
+    public void getUsers_whenUserIsSavedAfterPageWasCached_receivePageWithNewUser(){
+        userService.save(TestUtil.createValidUser("user1"));
+        getUsers(new ParameterizedTypeReference<Object>() {});
+        userService.save(TestUtil.createValidUser("user2"));
+
+        ResponseEntity<TestPage<Object>> response = getUsers(new ParameterizedTypeReference<TestPage<Object>>() {});
+        assertThat(response.getBody().getTotalElements()).isEqualTo(2);
+    }
+
+    private ResponseEntity<Object> getWithIfNoneMatch(String path, String etag) {
+        return testRestTemplate.exchange(path, HttpMethod.GET, new HttpEntity<>(ifNoneMatch(etag)), Object.class);
+    }
+
+    private HttpHeaders ifNoneMatch(String etag) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(etag);
+        return headers;
+    }
+
+    // thumbnails are made in the background, views point at the upload until they exist
+    private String awaitThumbnail(Supplier<String> image) throws InterruptedException {
+        for (int i = 0; i < 100 && !image.get().contains("_"); i++) {
+            Thread.sleep(50);
+        }
+        return image.get();
+    }
+
+    // the PNG signature, an IHDR chunk with the given size and IEND, without any pixel data
+    private byte[] createPngHeader(int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'});
+        ByteBuffer header = ByteBuffer.allocate(13).putInt(width).putInt(height).put((byte) 8).put((byte) 2);
+        writePngChunk(data, "IHDR", header.array());
+        writePngChunk(data, "IEND", new byte[0]);
+        return out.toByteArray();
+    }
+
+    private void writePngChunk(DataOutputStream data, String type, byte[] content) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(type.getBytes(StandardCharsets.US_ASCII));
+        crc.update(content);
+        data.writeInt(content.length);
+        data.writeBytes(type);
+        data.write(content);
+        data.writeInt((int) crc.getValue());
+    }
+
+    private byte[] createPng() throws IOException {
+        BufferedImage image = new BufferedImage(32, 32, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, (int) System.nanoTime());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    private <T> ResponseEntity<T> putUserWithImage(long id, byte[] image, Class<T> responseType) {
+        MultiValueMap<String, Object> parts = new LinkedMultiValueMap<>();
+        parts.add("displayName", "newDisplayName");
+        parts.add("image", new ByteArrayResource(image) {
+            @Override
+            public String getFilename() {
+                return "profile.png";
+            }
+        });
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+        return putUser(id, new HttpEntity<>(parts, headers), responseType);
+    }
+
+    private String importLine(String username) {
+        return "{\"username\":\"" + username + "\",\"displayName\":\"import-display\",\"password\":\"P4ssword\"}";
+    }
+
+    private <T> ResponseEntity<T> postImport(String body, Class<T> responseType) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType("application/x-ndjson"));
+        return testRestTemplate.postForEntity(API_1_0_USERS + "/import", new HttpEntity<>(body, headers), responseType);
+    }
+
     private UserUpdateVM createValidUserUpdateVM() {
         UserUpdateVM updatedUser = new UserUpdateVM();
         updatedUser.setDisplayName("newDisplayName");
         return updatedUser;
     }
 
+    private ResponseEntity<byte[]> getWithAccept(String path, MediaType... accept) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setAccept(List.of(accept));
+        return testRestTemplate.exchange(path, HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+    }
+
+    private ResponseEntity<byte[]> getWithAcceptAndIfNoneMatch(String path, MediaType accept, String etag) {
+        HttpHeaders headers = ifNoneMatch(etag);
+        headers.setAccept(List.of(accept));
+        return testRestTemplate.exchange(path, HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+    }
+
     private void authenticate(String username) {
         testRestTemplate
                 .getRestTemplate()
@@ -0,0 +1,106 @@
+package com.udemyspringtdd.hoaxifybackend;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.udemyspringtdd.hoaxifybackend.configuration.PasswordHashingExecutor;
+import com.udemyspringtdd.hoaxifybackend.user.UserImportService;
+import com.udemyspringtdd.hoaxifybackend.user.UserRepository;
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserImportErrorVM;
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserImportResultVM;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+public class UserImportServiceTest {
+
+    @Autowired
+    UserImportService userImportService;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    PasswordHashingExecutor passwordHashingExecutor;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Before
+    public void cleanUp(){
+        userRepository.deleteAll();
+    }
+
+    @Test
+    public void importUsers_whenNameIsTakenBetweenCheckAndInsert_importOtherRowsOfTheBatch() throws Exception {
+        String body = importLine("import-user1") + "\n" + importLine("import-user2") + "\n" + importLine("import-user3");
+        CountDownLatch release = new CountDownLatch(1);
+        List<Thread> blockers = occupyPasswordHashing(release);
+        ExecutorService importer = Executors.newSingleThreadExecutor();
+        try {
+            Future<UserImportResultVM> result = importer.submit(() ->
+                    userImportService.importUsers(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8))));
+            // the hashes are only queued once the batch has checked its names
+            while (meterRegistry.get("executor.queued").tag("name", "password-hashing").gauge().value() == 0) {
+                Thread.sleep(10);
+            }
+            // straight to the repository: a signup would have to hash on the occupied threads
+            userRepository.save(TestUtil.createValidUser("Import-User2"));
+            release.countDown();
+
+            UserImportResultVM imported = result.get(30, TimeUnit.SECONDS);
+            assertThat(imported.getImported()).isEqualTo(2);
+            assertThat(imported.getErrors()).hasSize(1);
+            UserImportErrorVM error = imported.getErrors().get(0);
+            assertThat(error.getLine()).isEqualTo(2);
+            assertThat(error.getValidationErrors().get("username")).isEqualTo("Username already in use");
+            assertThat(userRepository.findByUsername("import-user1")).isNotNull();
+            assertThat(userRepository.findByUsername("import-user3")).isNotNull();
+        } finally {
+            release.countDown();
+            importer.shutdown();
+            for (Thread blocker : blockers) {
+                blocker.join();
+            }
+        }
+    }
+
+    // keeps every hashing thread busy until released, so hashes submitted meanwhile wait in the queue
+    private List<Thread> occupyPasswordHashing(CountDownLatch release) throws InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        CountDownLatch running = new CountDownLatch(threads);
+        List<Thread> blockers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread blocker = new Thread(() -> passwordHashingExecutor.execute(() -> {
+                running.countDown();
+                return release.await(30, TimeUnit.SECONDS);
+            }));
+            blocker.start();
+            blockers.add(blocker);
+        }
+        running.await(10, TimeUnit.SECONDS);
+        return blockers;
+    }
+
+    private String importLine(String username) {
+        return "{\"username\":\"" + username + "\",\"displayName\":\"import-display\",\"password\":\"P4ssword\"}";
+    }
+}
@@ -0,0 +1,67 @@
+package com.udemyspringtdd.hoaxifybackend;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.udemyspringtdd.hoaxifybackend.user.UserListVersion;
+import com.udemyspringtdd.hoaxifybackend.user.UserPageCache;
+import com.udemyspringtdd.hoaxifybackend.user.UserService;
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserVM;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+public class UserPageCacheTest {
+
+    @Autowired
+    UserPageCache userPageCache;
+
+    @Autowired
+    UserService userService;
+
+    @Autowired
+    UserListVersion userListVersion;
+
+    @Before
+    public void cleanUp(){
+        userPageCache.invalidateAll();
+    }
+
+    @Test
+    public void userPageCache_whenOlderVersionIsRequestedAfterNewer_keepsNewerPageAndDoesNotStoreOlder() {
+        long olderSequence = userService.getUsersSequence();
+        String olderVersion = userService.getUsersVersion(null);
+        userListVersion.increment();
+        long newerSequence = userService.getUsersSequence();
+        String newerVersion = userService.getUsersVersion(null);
+        Pageable page = PageRequest.of(0, 10);
+        AtomicInteger loads = new AtomicInteger();
+        Supplier<Page<UserVM>> loader = () -> {
+            loads.incrementAndGet();
+            return Page.empty(page);
+        };
+
+        userPageCache.get(newerSequence, newerVersion, MediaType.APPLICATION_JSON, page, loader);
+        // a request that read the version before the write comes in late
+        userPageCache.get(olderSequence, olderVersion, MediaType.APPLICATION_JSON, page, loader);
+        userPageCache.get(newerSequence, newerVersion, MediaType.APPLICATION_JSON, page, loader);
+        assertThat(loads.get()).isEqualTo(2);
+
+        userPageCache.get(olderSequence, olderVersion, MediaType.APPLICATION_JSON, page, loader);
+        assertThat(loads.get()).isEqualTo(3);
+    }
+}
@@ -2,6 +2,7 @@ package com.udemyspringtdd.hoaxifybackend;
 
 import com.udemyspringtdd.hoaxifybackend.user.User;
 import com.udemyspringtdd.hoaxifybackend.user.UserRepository;
+import com.udemyspringtdd.hoaxifybackend.user.vm.UserVM;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -10,9 +11,13 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.util.List;
+
 @RunWith(SpringRunner.class)
 @DataJpaTest
 @ActiveProfiles("test")
@@ -40,4 +45,51 @@ public class UserRepositoryTest {
         assertThat(inDB).isNull();
     }
 
+    @Test
+    public void existsByUsername_whenUserExists_returnsTrue(){
+        testEntityManager.persist(TestUtil.createValidUser());
+
+        assertThat(userRepository.existsByUsername("test-user")).isTrue();
+        assertThat(userRepository.existsByUsername("other-user")).isFalse();
+    }
+
+    @Test
+    public void findByUsername_whenOnlyCaseDiffers_returnsNull(){
+        testEntityManager.persist(TestUtil.createValidUser());
+
+        assertThat(userRepository.findByUsername("Test-User")).isNull();
+    }
+
+    @Test
+    public void existsByUsername_whenOnlyCaseDiffers_returnsTrue(){
+        testEntityManager.persist(TestUtil.createValidUser());
+
+        assertThat(userRepository.existsByUsername("Test-User")).isTrue();
+    }
+
+    @Test(expected = DataIntegrityViolationException.class)
+    public void saveAndFlush_whenUsernameOnlyDiffersInCase_throwsDataIntegrityViolationException(){
+        testEntityManager.persist(TestUtil.createValidUser("user1"));
+
+        userRepository.saveAndFlush(TestUtil.createValidUser("USER1"));
+    }
+
+    @Test
+    public void findExistingUsernames_whenSomeUsersExist_returnsOnlyExistingUsernames(){
+        testEntityManager.persist(TestUtil.createValidUser("user1"));
+        testEntityManager.persist(TestUtil.createValidUser("user2"));
+
+        assertThat(userRepository.findExistingUsernames(List.of("user1", "user2", "user3"))).containsOnly("user1", "user2");
+    }
+
+    @Test
+    public void findUserVMsByUsernameNot_whenUsersExist_returnsProjectionsOfOtherUsers(){
+        testEntityManager.persist(TestUtil.createValidUser("user1"));
+        testEntityManager.persist(TestUtil.createValidUser("user2"));
+
+        List<UserVM> users = userRepository.findUserVMsByUsernameNot("user1", PageRequest.of(0, 10));
+        assertThat(users).hasSize(1);
+        assertThat(users.get(0).getUsername()).isEqualTo("user2");
+    }
+
 }
\ No newline at end of file